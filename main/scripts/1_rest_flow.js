@@ -21,6 +21,14 @@ scenario = {
             if (userId) {
                 this.testGetUserPosts(baseUrl, userId);
             }
+            // Test: Async requests in flight together
+            this.testAsync(baseUrl);
+            // Test: Independent requests as one parallel batch
+            this.testBatch(baseUrl);
+            // Test: Stream response straight to the data dir
+            this.testDownload(baseUrl);
+            logger.log("Connection pool: " + http.poolStats());
+            logger.log("HTTP cache: " + http.cacheStats());
         } catch (e) {
             logger.error("CRITICAL ERROR: " + e);
         } finally {
@@ -39,6 +47,8 @@ scenario = {
             var allIds = utils.jsonPath(resp.body, "$[*].id");
             var nameOfId1 = utils.jsonPath(resp.body, "$[?(@.id == 1)].name");
 
+            logger.log("Content-Type: " + resp.header("Content-Type") + ", " + resp.length + " bytes");
+            logger.log("Timings: " + resp.timings);
             logger.log("Found IDs: " + allIds);
             logger.log("User with ID 1: " + nameOfId1);
         }
@@ -79,6 +89,46 @@ scenario = {
         }
     },
 
+    testAsync: function(baseUrl) {
+        logger.log("--- Step 4: Async Requests ---");
+        var usersF = http.getAsync(baseUrl + "/users");
+        var postsF = http.getAsync(baseUrl + "/posts")
+            .then(function(resp) { return JSON.parse(resp.body).length; });
+
+        var users = usersF.await();
+        if (this.assertStatus(users, 200)) {
+            logger.log("Async users: " + users.body);
+        }
+        logger.log("Async posts count: " + postsF.await());
+    },
+
+    testBatch: function(baseUrl) {
+        logger.log("--- Step 5: Parallel Batch ---");
+        var result = http.batch([
+            { url: baseUrl + "/users" },
+            { method: "GET", url: baseUrl + "/posts?userId=1" },
+            { url: baseUrl + "/posts?userId=2", headers: { "X-Trace": "batch" } }
+        ], { concurrency: 2 });
+
+        for (var i = 0; i < result.items.size(); i++) {
+            var item = result.items.get(i);
+            if (item.ok) {
+                logger.log("Batch #" + i + ": " + item.response.status + " in " + item.elapsedMs + "ms");
+            } else {
+                logger.error("Batch #" + i + " failed: " + item.error);
+            }
+        }
+        logger.log("Batch total: " + result.totalMs + "ms, failed: " + result.failed);
+    },
+
+    testDownload: function(baseUrl) {
+        logger.log("--- Step 6: Streamed Download ---");
+        var dl = http.download(baseUrl + "/users", "users_download.json");
+        if (this.assertStatus(dl, 200)) {
+            logger.log("Downloaded: " + dl);
+        }
+    },
+
     // Helpers
     assertStatus: function(resp, expected) {
         if (resp.status === expected) {
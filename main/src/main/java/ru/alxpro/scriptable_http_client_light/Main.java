@@ -4,22 +4,40 @@ import static ru.alxpro.scriptable_http_client_light.utils.FileUtils.getNameWith
 import static ru.alxpro.scriptable_http_client_light.utils.ScriptLoader.SCRIPT_KEY;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.security.CodeSource;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
 import ru.alxpro.scriptable_http_client_light.script.AppConfig;
 import ru.alxpro.scriptable_http_client_light.script.Env;
 import ru.alxpro.scriptable_http_client_light.script.JsLogger;
 import ru.alxpro.scriptable_http_client_light.script.SharedContext;
 import ru.alxpro.scriptable_http_client_light.script.Utils;
 import ru.alxpro.scriptable_http_client_light.script.client.AuthClient;
+import ru.alxpro.scriptable_http_client_light.script.client.HttpTransport;
 import ru.alxpro.scriptable_http_client_light.script.client.RestClient;
 import ru.alxpro.scriptable_http_client_light.script.client.SoapClient;
+import ru.alxpro.scriptable_http_client_light.script.server.MetricsServer;
 import ru.alxpro.scriptable_http_client_light.script.server.RestTestServer;
 import ru.alxpro.scriptable_http_client_light.script.server.SoapTestServer;
 import ru.alxpro.scriptable_http_client_light.utils.ArgsParser;
 import ru.alxpro.scriptable_http_client_light.utils.CliHandler;
+import ru.alxpro.scriptable_http_client_light.utils.LoadAgent;
+import ru.alxpro.scriptable_http_client_light.utils.LoadCoordinator;
+import ru.alxpro.scriptable_http_client_light.utils.LoadProtocol;
+import ru.alxpro.scriptable_http_client_light.utils.LoadRunner;
+import ru.alxpro.scriptable_http_client_light.utils.LoadStats;
+import ru.alxpro.scriptable_http_client_light.utils.MetricsRegistry;
 import ru.alxpro.scriptable_http_client_light.utils.ScriptLoader;
 import ru.alxpro.scriptable_http_client_light.utils.ServiceRegistry;
+import ru.alxpro.scriptable_http_client_light.utils.Thresholds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +45,9 @@ public class Main {
 
   private static final Logger log = LoggerFactory.getLogger(Main.class);
   private static final String CONFIG_FILE = "config.properties";
+  private static final int EXIT_FAILED = 1;
+  private static final int EXIT_THRESHOLDS = 99;
+  private static final String AGENT_TOKEN_ENV = "LOAD_AGENT_TOKEN";
   private static String appHome = ".";
   private static ArgsParser parser;
   private static final SharedContext context = new SharedContext();
@@ -39,8 +60,25 @@ public class Main {
     }
     log.info("=== Application Started ===");
     detectAppHome();
-    startApp();
+    if (parser.hasOption("agent")) {
+      int port;
+      try {
+        port = Integer.parseInt(parser.getOption("agent"));
+      } catch (NumberFormatException e) {
+        log.error("Load options error: invalid --agent port: {}", parser.getOption("agent"));
+        System.exit(EXIT_FAILED);
+        return;
+      }
+      if (!runAgent(port)) {
+        System.exit(EXIT_FAILED);
+      }
+      return;
+    }
+    int code = startApp();
     log.info("=== Application Stopped ===");
+    if (code != 0) {
+      System.exit(code);
+    }
   }
 
   private static void setupArgsParser(String[] args) {
@@ -49,6 +87,24 @@ public class Main {
     parser.addOption("h", "help", false, "Show this help message");
     parser.addOption("c", "config", true, "Path to properties file");
     parser.addOption("s", "scripts", true, "Override scripts dir");
+    parser.addOption("j", "jfr", false, "Record JFR events to data/recording-<time>.jfr");
+    parser.addOption("", "vus", true,
+        "Load mode: concurrent virtual users running [id ...] (open model: max workers)");
+    parser.addOption("", "rate", true, "Open model: iterations started per second");
+    parser.addOption("", "stages", true,
+        "Open model: rate ramps after --rate, e.g. 30s:100,1m:0");
+    parser.addOption("", "duration", true, "Load mode: run time, e.g. 30s, 5m");
+    parser.addOption("", "ramp-up", true, "Load mode: time to start all VUs");
+    parser.addOption("", "warm-up", true, "Load mode: initial time left out of the stats");
+    parser.addOption("", "iterations", true, "Load mode: measured iterations in total");
+    parser.addOption("", "agents", true,
+        "Load mode: split the load across agents, e.g. host1:7070,host2:7070");
+    parser.addOption("", "agent", true,
+        "Run as a load agent on the port (needs --agent-token)");
+    parser.addOption("", "agent-bind", true,
+        "Load agent: address to listen on (default 127.0.0.1, trusted networks only)");
+    parser.addOption("", "agent-token", true,
+        "Shared secret of agent and coordinator (default: env " + AGENT_TOKEN_ENV + ")");
     try {
       parser.parse(args);
     } catch (IllegalArgumentException e) {
@@ -74,16 +130,13 @@ public class Main {
     }
   }
 
-  public static void loadConfig(AppConfig config) {
-    File configFile = null;
+  private static File getConfigFile() {
     String optConfig = parser.getOption("config");
-    if (optConfig != null) {
-      configFile = new File(appHome, optConfig);
-    }
-    if (configFile == null) {
-      configFile = new File(appHome, CONFIG_FILE);
-    }
-    String configPath = configFile.getAbsolutePath();
+    return new File(appHome, optConfig != null ? optConfig : CONFIG_FILE);
+  }
+
+  public static void loadConfig(AppConfig config) {
+    String configPath = getConfigFile().getAbsolutePath();
     if (!config.load(configPath)) {
       log.warn("File {} not found. Using defaults.", configPath);
     } else {
@@ -102,15 +155,15 @@ public class Main {
   }
 
   private static void setupRegistry(
-      ServiceRegistry registry, AppConfig config,
+      ServiceRegistry registry, AppConfig config, HttpTransport transport,
       RestTestServer restTestServer, SoapTestServer soapTestServer
   ) {
     registry.register("config", config);
     Utils utils = new Utils(context);
     registry.register("utils", utils);
-    registry.register("auth", new AuthClient(config, utils));
-    registry.register("http", new RestClient(config));
-    registry.register("soap", new SoapClient(config, utils));
+    registry.register("auth", new AuthClient(config, transport, utils));
+    registry.register("http", new RestClient(config, transport, context));
+    registry.register("soap", new SoapClient(config, transport, utils));
     registry.register("context", context);
     registry.register("env", new Env());
     registry.register("logger", new JsLogger());
@@ -118,37 +171,131 @@ public class Main {
     registry.register("soapTestServer", soapTestServer);
   }
 
-  private static void startApp() {
+  // Default JFR settings (low overhead) plus the client's events, see JfrEvents
+  private static Recording startJfr() {
+    try {
+      String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+      File file = new File(getDataDir(), "recording-" + time + ".jfr");
+      Recording recording = new Recording(Configuration.getConfiguration("default"));
+      recording.setName("scriptable-http-client");
+      recording.setToDisk(true);
+      recording.setDumpOnExit(true);
+      recording.setDestination(file.toPath());
+      recording.start();
+      log.info("JFR recording to {}", file.getAbsolutePath());
+      return recording;
+    } catch (Exception e) {
+      log.warn("Could not start JFR recording: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  // Exit code: 0, EXIT_FAILED or EXIT_THRESHOLDS
+  private static int startApp() {
+    Recording recording = parser.hasOption("jfr") ? startJfr() : null;
     var config = new AppConfig();
     loadConfig(config);
+    HttpTransport.setupJdkHostnameVerification(config);
 
     var registry = new ServiceRegistry();
+    var transport = new HttpTransport(config, context);
     var restTestServer = new RestTestServer();
     var soapTestServer = new SoapTestServer();
-    setupRegistry(registry, config, restTestServer, soapTestServer);
+    setupRegistry(registry, config, transport, restTestServer, soapTestServer);
+    var metricsServer = new MetricsServer(transport.getMetrics());
+    int metricsPort = config.getInt(AppConfig.METRICS_PORT, 0);
+    if (metricsPort > 0) {
+      metricsServer.start(metricsPort);
+    }
 
-    var loader = new ScriptLoader(registry);
+    var loader = new ScriptLoader(registry, transport.getMetrics());
     String cfgFolder = config.get("script.folder", "scripts");
     String folder = parser.getOption("scripts", cfgFolder);
     String scriptsPath = new File(appHome, folder).getAbsolutePath();
-    loader.init(scriptsPath);
-
     List<String> scriptIds = parser.getPositionalArgs();
-    if (!scriptIds.isEmpty()) {
-      runBatchMode(loader, registry, scriptIds);
+    // Batch and load runs compile only the scripts they name
+    loader.init(scriptsPath, scriptIds.isEmpty());
+
+    boolean load = parser.hasOption("vus") || parser.hasOption("rate")
+        || parser.hasOption("stages");
+    int code = 0;
+    if (!scriptIds.isEmpty() && load) {
+      code = runLoadMode(loader, registry, transport, config, scriptsPath, scriptIds);
+    } else if (!scriptIds.isEmpty()) {
+      code = runBatchMode(loader, registry, transport, config, scriptIds);
     } else {
-      new CliHandler(loader, config, context, scriptsPath).start();
+      new CliHandler(loader, config, context, transport, scriptsPath).start();
     }
 
     loader.stop();
     restTestServer.stop();
     soapTestServer.stop();
+    metricsServer.stop();
+    transport.close();
+    if (recording != null) {
+      // Writes the destination file
+      recording.stop();
+      recording.close();
+    }
+    return code;
+  }
+
+  // Config thresholds plus those declared by the scripts to run
+  private static Thresholds setupThresholds(
+      AppConfig config, List<ScriptLoader.ScriptEntry> entries
+  ) {
+    var thresholds = new Thresholds();
+    thresholds.add(config.get(AppConfig.THRESHOLDS, ""));
+    for (ScriptLoader.ScriptEntry entry : entries) {
+      List<String> declared = entry.scenario.getThresholds();
+      if (declared != null) {
+        declared.forEach(thresholds::add);
+      }
+    }
+    return thresholds;
+  }
+
+  private static List<ScriptLoader.ScriptEntry> findEntries(
+      ScriptLoader loader, List<String> scriptIds
+  ) {
+    List<ScriptLoader.ScriptEntry> entries = new ArrayList<>();
+    for (String id : scriptIds) {
+      ScriptLoader.ScriptEntry entry = loader.get(id);
+      if (entry == null) {
+        log.error(missing(loader, id));
+        return null;
+      }
+      entries.add(entry);
+    }
+    return entries;
   }
 
-  private static void runBatchMode(
-      ScriptLoader loader, ServiceRegistry registry, List<String> scriptIds
+  // Why loader.get(id) returned null
+  private static String missing(ScriptLoader loader, String id) {
+    String error = loader.getError(id);
+    return error != null
+        ? "Script " + id + " failed to load: " + error : "Script not found for: " + id;
+  }
+
+  private static int runBatchMode(
+      ScriptLoader loader, ServiceRegistry registry, HttpTransport transport,
+      AppConfig config, List<String> scriptIds
   ) {
     log.info("=== Batch Mode Started ===");
+    List<ScriptLoader.ScriptEntry> entries = findEntries(loader, scriptIds);
+    if (entries == null) {
+      log.error("=== Batch Failed ===");
+      return EXIT_FAILED;
+    }
+    loader.logCompileSummary();
+    Thresholds thresholds;
+    try {
+      thresholds = setupThresholds(config, entries);
+    } catch (IllegalArgumentException e) {
+      log.error("Thresholds error: {}", e.getMessage());
+      return EXIT_FAILED;
+    }
+    var metrics = transport.getMetrics();
     boolean success = true;
     try {
       for (String id : scriptIds) {
@@ -156,16 +303,228 @@ public class Main {
           success = false;
           break;
         }
+        if (thresholds.shouldAbort(metrics, null)) {
+          break;
+        }
       }
     } catch (Exception e) {
       log.error("Batch Error: {}", e.getMessage(), e);
       success = false;
     }
-    if (success) {
-      log.info("=== Batch Completed ===");
-    } else {
+    log.info("Endpoint Stats:\n{}", metrics.format());
+    boolean passed = thresholds.check(metrics, null);
+    if (!success) {
       log.error("=== Batch Failed ===");
+      return EXIT_FAILED;
+    }
+    if (!passed) {
+      log.error("=== Batch Failed: thresholds breached ===");
+      return EXIT_THRESHOLDS;
     }
+    log.info("=== Batch Completed ===");
+    return 0;
+  }
+
+  private static int runLoadMode(
+      ScriptLoader loader, ServiceRegistry registry, HttpTransport transport,
+      AppConfig config, String scriptsPath, List<String> scriptIds
+  ) {
+    List<ScriptLoader.ScriptEntry> entries = findEntries(loader, scriptIds);
+    if (entries == null) {
+      return EXIT_FAILED;
+    }
+    loader.logCompileSummary();
+    var metrics = transport.getMetrics();
+    Thresholds thresholds;
+    LoadProtocol.Job job;
+    try {
+      thresholds = setupThresholds(config, entries);
+      job = setupLoadJob(scriptIds);
+    } catch (IllegalArgumentException e) {
+      log.error("Load options error: {}", e.getMessage());
+      return EXIT_FAILED;
+    }
+    String agents = parser.getOption("agents");
+    // ok: no iteration failed; complete: every agent reported its share
+    boolean ok;
+    boolean complete = true;
+    LoadStats stats;
+    if (agents != null) {
+      try {
+        File configFile = getConfigFile();
+        job.config = configFile.exists() ? Files.readString(configFile.toPath()) : null;
+        job.scripts = readScripts(scriptsPath);
+      } catch (IOException e) {
+        log.error("Could not read scripts or config: {}", e.getMessage());
+        return EXIT_FAILED;
+      }
+      String token = getAgentToken();
+      if (token == null) {
+        log.error("--agents needs --agent-token or env {}", AGENT_TOKEN_ENV);
+        return EXIT_FAILED;
+      }
+      var coordinator = new LoadCoordinator(
+          List.of(agents.trim().split("\\s*,\\s*")), token, metrics);
+      complete = coordinator.run(job);
+      ok = complete && coordinator.getErrors() == 0;
+      stats = coordinator;
+    } else {
+      LoadRunner runner = newLoadRunner(loader, config, metrics, entries, job);
+      if (!thresholds.isEmpty()) {
+        runner.setAbortCheck(() -> thresholds.shouldAbort(metrics, runner));
+      }
+      ok = runner.run();
+      stats = runner;
+    }
+    boolean passed = thresholds.check(metrics, stats);
+    if (!complete) {
+      log.error("=== Load Failed: agents lost ===");
+      return EXIT_FAILED;
+    }
+    if (stats.getLatency().getCount() <= stats.getErrors()) {
+      log.error("=== Load Failed: no successful iterations ===");
+      return EXIT_FAILED;
+    }
+    if (!passed) {
+      log.error("=== Load Failed: thresholds breached ===");
+      return EXIT_THRESHOLDS;
+    }
+    // Some failed iterations are expected under load, thresholds bound how many
+    if (!ok && thresholds.isEmpty()) {
+      log.error("=== Load Failed: iterations failed, no thresholds set ===");
+      return EXIT_FAILED;
+    }
+    if (ok) {
+      log.info("=== Load Completed ===");
+    } else {
+      log.error("=== Load Completed With Errors ===");
+    }
+    return 0;
+  }
+
+  private static LoadProtocol.Job setupLoadJob(List<String> scriptIds) {
+    var job = new LoadProtocol.Job();
+    boolean openModel = parser.hasOption("rate") || parser.hasOption("stages");
+    job.ids = scriptIds;
+    job.vus = Integer.parseInt(parser.getOption("vus", openModel ? "100" : "1"));
+    job.durationMs = LoadRunner.parseDuration(parser.getOption("duration"));
+    job.rampUpMs = LoadRunner.parseDuration(parser.getOption("ramp-up"));
+    job.warmUpMs = LoadRunner.parseDuration(parser.getOption("warm-up"));
+    job.iterations = Long.parseLong(parser.getOption("iterations", "0"));
+    if (openModel) {
+      String stages = parser.getOption("stages");
+      job.rate = Double.parseDouble(parser.getOption("rate", "0"));
+      job.stages = stages != null ? LoadRunner.parseStages(stages) : List.of();
+      if (job.stages.isEmpty() && (job.rate <= 0
+          || job.durationMs <= 0 && job.iterations <= 0)) {
+        throw new IllegalArgumentException(
+            "--rate needs a positive value and --duration, --iterations or --stages");
+      }
+    }
+    return job;
+  }
+
+  private static LoadRunner newLoadRunner(
+      ScriptLoader loader, AppConfig config, MetricsRegistry metrics,
+      List<ScriptLoader.ScriptEntry> entries, LoadProtocol.Job job
+  ) {
+    var pool = loader.newPool(config.getInt(AppConfig.SCRIPT_POOL_MAX_SIZE, 0));
+    var runner = new LoadRunner(loader, entries, context, pool, metrics, job.vus,
+        job.durationMs, job.rampUpMs, job.warmUpMs, job.iterations);
+    if (job.stages != null) {
+      runner.setArrivalRate(job.rate, job.stages);
+    }
+    runner.setVirtualThreads(Boolean.parseBoolean(config.get(AppConfig.THREADS_VIRTUAL, "false")));
+    return runner;
+  }
+
+  private static Map<String, String> readScripts(String scriptsPath) throws IOException {
+    Map<String, String> scripts = new TreeMap<>();
+    File[] files = new File(scriptsPath).listFiles((d, n) -> n.toLowerCase().endsWith(".js"));
+    if (files != null) {
+      for (File f : files) {
+        scripts.put(f.getName(), Files.readString(f.toPath()));
+      }
+    }
+    return scripts;
+  }
+
+  // Load agent: every job runs on its own transport and a copy of the coordinator's
+  // scripts and config, as a fresh process would
+  private static boolean runAgent(int port) {
+    String token = getAgentToken();
+    if (token == null) {
+      log.error("Load agent needs --agent-token or env {}", AGENT_TOKEN_ENV);
+      return false;
+    }
+    File dir = new File(getDataDir(), "agent-" + port);
+    String bind = parser.getOption("agent-bind", "127.0.0.1");
+    new LoadAgent(bind, port, token, job -> prepareAgentJob(job, dir)).serve();
+    return true;
+  }
+
+  // The option shows in the process list, the environment variable does not
+  private static String getAgentToken() {
+    String token = parser.getOption("agent-token", System.getenv(AGENT_TOKEN_ENV));
+    return token == null || token.isBlank() ? null : token;
+  }
+
+  private static LoadAgent.Prepared prepareAgentJob(LoadProtocol.Job job, File dir)
+      throws IOException {
+    File scriptsDir = new File(dir, "scripts");
+    Files.createDirectories(scriptsDir.toPath());
+    File[] old = scriptsDir.listFiles();
+    if (old != null) {
+      for (File f : old) {
+        Files.delete(f.toPath());
+      }
+    }
+    for (Map.Entry<String, String> e : job.scripts.entrySet()) {
+      // Names only, the coordinator must not write outside the dir
+      File target = new File(scriptsDir, new File(e.getKey()).getName());
+      Files.writeString(target.toPath(), e.getValue());
+    }
+    var config = new AppConfig();
+    if (job.config != null) {
+      File configFile = new File(dir, CONFIG_FILE);
+      Files.writeString(configFile.toPath(), job.config);
+      config.load(configFile.getAbsolutePath());
+    }
+    var registry = new ServiceRegistry();
+    var transport = new HttpTransport(config, context);
+    var restTestServer = new RestTestServer();
+    var soapTestServer = new SoapTestServer();
+    setupRegistry(registry, config, transport, restTestServer, soapTestServer);
+    Runnable close = () -> {
+      restTestServer.stop();
+      soapTestServer.stop();
+      transport.close();
+    };
+    var metrics = transport.getMetrics();
+    var loader = new ScriptLoader(registry, metrics);
+    loader.loadAll(scriptsDir);
+    List<ScriptLoader.ScriptEntry> entries = findEntries(loader, job.ids);
+    if (entries == null) {
+      close.run();
+      throw new IOException(job.ids.stream().filter(id -> loader.get(id) == null)
+          .map(id -> missing(loader, id)).findFirst().orElse("Scripts not loaded"));
+    }
+    loader.logCompileSummary();
+    LoadRunner runner = newLoadRunner(loader, config, metrics, entries, job);
+    return new LoadAgent.Prepared() {
+      @Override
+      public LoadProtocol.Result run() {
+        // Script loading is not part of the run
+        metrics.reset();
+        runner.run();
+        return LoadAgent.result(runner, metrics);
+      }
+
+      @Override
+      public void close() {
+        close.run();
+      }
+    };
   }
 
   private static boolean executeBatch(
@@ -173,15 +532,14 @@ public class Main {
   ) {
     ScriptLoader.ScriptEntry entry = loader.get(key);
     if (entry == null) {
-      log.error("Script not found for: {}", key);
+      log.error(missing(loader, key));
       return false;
     }
     JsLogger jsLogger = registry.getService("logger");
-    jsLogger.reset();
     try {
       log.info("START [{}] File:[{}]", key, entry.name);
       context.put(SCRIPT_KEY, getNameWithoutExt(entry.name));
-      entry.scenario.runScenario();
+      loader.run(entry);
       log.info("END [{}] File:[{}]", key, entry.name);
     } catch (Exception e) {
       log.error("ERROR [{}]: {}", key, e.getMessage(), e);
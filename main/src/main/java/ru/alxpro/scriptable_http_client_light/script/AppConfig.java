@@ -12,12 +12,138 @@ public class AppConfig {
   private static final Logger log = LoggerFactory.getLogger(AppConfig.class);
   //public static final String MAX_BODY_LOG_SIZE = "maxBodyLogSize";
   public static final String MAX_BODY_LOG_SIZE = "maxBodyLogSize";
+  public static final String LOG_MAX_PER_SECOND = "log.maxPerSecond";
+  public static final String SCRIPT_POOL_MAX_SIZE = "script.pool.maxSize";
+  public static final String SCRIPT_CODE_CACHE = "script.codeCache";
+  public static final String SCRIPT_COMPILE_THREADS = "script.compileThreads";
+  public static final String TRANSPORT = "transport";
+  public static final String TRANSPORT_H2C = "transport.h2c";
+  public static final String POOL_MAX_TOTAL = "pool.maxTotal";
+  public static final String POOL_MAX_PER_ROUTE = "pool.maxPerRoute";
+  public static final String POOL_IDLE_TTL = "pool.idleTtl";
+  public static final String POOL_VALIDATE_AFTER = "pool.validateAfterInactivity";
+  public static final String ASYNC_MAX_IN_FLIGHT = "async.maxInFlight";
+  public static final String THREADS_VIRTUAL = "threads.virtual";
+  public static final String COMPRESSION_RESPONSE = "compression.response";
+  public static final String COMPRESSION_REQUEST = "compression.request";
+  public static final String COMPRESSION_MIN_SIZE = "compression.minSize";
+  public static final String RESPONSE_DIRECT_BUFFERS = "response.directBuffers";
+  public static final String RESPONSE_POOL_MAX_SIZE = "response.bufferPool.maxSize";
+  public static final String RESPONSE_POOL_PER_CLASS = "response.bufferPool.perClass";
+  public static final String CACHE_ENABLED = "cache.enabled";
+  public static final String CACHE_MAX_BYTES = "cache.maxBytes";
+  public static final String CACHE_MAX_ENTRY_SIZE = "cache.maxEntrySize";
+  public static final String CACHE_DISK = "cache.disk";
+  public static final String CACHE_DISK_MAX_BYTES = "cache.diskMaxBytes";
+  // Per-host override: host.<hostname>.<key>, e.g. host.api.local.retry.maxAttempts=5
+  public static final String HOST_PREFIX = "host.";
+  public static final String RETRY_MAX_ATTEMPTS = "retry.maxAttempts";
+  public static final String RETRY_METHODS = "retry.methods";
+  public static final String RETRY_STATUSES = "retry.statuses";
+  public static final String RETRY_ON_EXCEPTION = "retry.onException";
+  public static final String RETRY_BACKOFF = "retry.backoff";
+  public static final String RETRY_MAX_BACKOFF = "retry.maxBackoff";
+  public static final String RETRY_JITTER = "retry.jitter";
+  public static final String RETRY_BUDGET_RATIO = "retry.budget.ratio";
+  public static final String RETRY_BUDGET_MIN = "retry.budget.min";
+  public static final String BREAKER_ENABLED = "breaker.enabled";
+  public static final String BREAKER_WINDOW = "breaker.window";
+  public static final String BREAKER_MIN_CALLS = "breaker.minCalls";
+  public static final String BREAKER_FAILURE_RATE = "breaker.failureRate";
+  public static final String BREAKER_OPEN_MS = "breaker.openMs";
+  public static final String BREAKER_HALF_OPEN_PROBES = "breaker.halfOpenProbes";
+  public static final String LIMIT_RPS = "limit.rps";
+  public static final String LIMIT_BURST = "limit.burst";
+  public static final String HAR_ENABLED = "har.enabled";
+  public static final String HAR_BODIES = "har.bodies";
+  public static final String HAR_MAX_BODY_SIZE = "har.maxBodySize";
+  public static final String HAR_QUEUE_SIZE = "har.queueSize";
+  public static final String TLS_TRUST_ALL = "tls.trustAll";
+  public static final String TLS_TRUSTSTORE = "tls.truststore";
+  public static final String TLS_TRUSTSTORE_PASSWORD = "tls.truststorePassword";
+  public static final String TLS_TRUSTSTORE_TYPE = "tls.truststoreType";
+  public static final String TLS_KEYSTORE = "tls.keystore";
+  public static final String TLS_KEYSTORE_PASSWORD = "tls.keystorePassword";
+  public static final String TLS_KEYSTORE_TYPE = "tls.keystoreType";
+  public static final String TLS_VERIFY_HOSTNAME = "tls.verifyHostname";
+  public static final String TLS_PROTOCOLS = "tls.protocols";
+  public static final String TLS_ALPN = "tls.alpn";
+  public static final String TLS_SESSION_CACHE_SIZE = "tls.sessionCacheSize";
+  public static final String TLS_SESSION_TIMEOUT = "tls.sessionTimeout";
+  public static final String METRICS_MAX_ENDPOINTS = "metrics.maxEndpoints";
+  public static final String METRICS_PORT = "metrics.port";
+  public static final String THRESHOLDS = "thresholds";
   private final Properties properties = new Properties();
 
   {
     // Default values
     //properties.put(MAX_BODY_LOG_SIZE, "1024");
     properties.put(MAX_BODY_LOG_SIZE, "1024");
+    // 0 = log every exchange
+    properties.put(LOG_MAX_PER_SECOND, "0");
+    // 0 = a script global per concurrent iteration
+    properties.put(SCRIPT_POOL_MAX_SIZE, "0");
+    properties.put(SCRIPT_CODE_CACHE, "true");
+    properties.put(SCRIPT_COMPILE_THREADS, "2");
+    // pooled (Apache HttpClient, HTTP/1.1) or http2 (java.net.http)
+    properties.put(TRANSPORT, "pooled");
+    properties.put(TRANSPORT_H2C, "true");
+    properties.put(POOL_MAX_TOTAL, "200");
+    properties.put(POOL_MAX_PER_ROUTE, "20");
+    // Milliseconds
+    properties.put(POOL_IDLE_TTL, "30000");
+    properties.put(POOL_VALIDATE_AFTER, "2000");
+    properties.put(ASYNC_MAX_IN_FLIGHT, "64");
+    // Needs JDK 21+, platform threads otherwise
+    properties.put(THREADS_VIRTUAL, "false");
+    properties.put(COMPRESSION_RESPONSE, "false");
+    // none, gzip or deflate
+    properties.put(COMPRESSION_REQUEST, "none");
+    properties.put(COMPRESSION_MIN_SIZE, "1024");
+    properties.put(RESPONSE_DIRECT_BUFFERS, "false");
+    properties.put(RESPONSE_POOL_MAX_SIZE, "1048576");
+    properties.put(RESPONSE_POOL_PER_CLASS, "32");
+    properties.put(CACHE_ENABLED, "false");
+    properties.put(CACHE_MAX_BYTES, "33554432");
+    properties.put(CACHE_MAX_ENTRY_SIZE, "1048576");
+    properties.put(CACHE_DISK, "false");
+    properties.put(CACHE_DISK_MAX_BYTES, "268435456");
+    // 1 = no retries
+    properties.put(RETRY_MAX_ATTEMPTS, "1");
+    properties.put(RETRY_METHODS, "GET,HEAD,OPTIONS,PUT,DELETE");
+    properties.put(RETRY_STATUSES, "429,502,503,504");
+    properties.put(RETRY_ON_EXCEPTION, "true");
+    // Milliseconds, doubled on every attempt
+    properties.put(RETRY_BACKOFF, "200");
+    properties.put(RETRY_MAX_BACKOFF, "5000");
+    properties.put(RETRY_JITTER, "0.5");
+    // Retries may add this share of requests, plus a reserve of budget.min
+    properties.put(RETRY_BUDGET_RATIO, "0.2");
+    properties.put(RETRY_BUDGET_MIN, "10");
+    properties.put(BREAKER_ENABLED, "false");
+    properties.put(BREAKER_WINDOW, "20");
+    properties.put(BREAKER_MIN_CALLS, "10");
+    // Percent of failed calls in the window that opens the circuit
+    properties.put(BREAKER_FAILURE_RATE, "50");
+    properties.put(BREAKER_OPEN_MS, "10000");
+    properties.put(BREAKER_HALF_OPEN_PROBES, "1");
+    // Requests per second, 0 = unlimited
+    properties.put(LIMIT_RPS, "0");
+    properties.put(LIMIT_BURST, "1");
+    properties.put(HAR_ENABLED, "false");
+    properties.put(HAR_BODIES, "false");
+    properties.put(HAR_MAX_BODY_SIZE, "65536");
+    properties.put(HAR_QUEUE_SIZE, "1000");
+    properties.put(TLS_TRUST_ALL, "true");
+    properties.put(TLS_TRUSTSTORE_TYPE, "PKCS12");
+    properties.put(TLS_KEYSTORE_TYPE, "PKCS12");
+    properties.put(TLS_SESSION_CACHE_SIZE, "1000");
+    // Seconds
+    properties.put(TLS_SESSION_TIMEOUT, "86400");
+    properties.put(METRICS_MAX_ENDPOINTS, "500");
+    // 0 = no metrics endpoint
+    properties.put(METRICS_PORT, "0");
+    properties.put(THRESHOLDS, "");
   }
 
   public boolean load(String filename) {
@@ -41,4 +167,30 @@ public class AppConfig {
   public String get(String key, String def) {
     return properties.getProperty(key, def);
   }
+
+  // host.<host>.<key> when set, otherwise <key>
+  public String getForHost(String host, String key) {
+    String value = host != null ? get(HOST_PREFIX + host + "." + key) : null;
+    return value != null ? value : get(key);
+  }
+
+  public int getInt(String key, int def) {
+    String value = get(key);
+    try {
+      return value != null ? Integer.parseInt(value.trim()) : def;
+    } catch (NumberFormatException e) {
+      log.warn("Invalid int value of {}: {}", key, value);
+      return def;
+    }
+  }
+
+  public long getLong(String key, long def) {
+    String value = get(key);
+    try {
+      return value != null ? Long.parseLong(value.trim()) : def;
+    } catch (NumberFormatException e) {
+      log.warn("Invalid long value of {}: {}", key, value);
+      return def;
+    }
+  }
 }
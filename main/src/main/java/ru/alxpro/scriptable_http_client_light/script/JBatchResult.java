@@ -0,0 +1,45 @@
+package ru.alxpro.scriptable_http_client_light.script;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class JBatchResult {
+
+  public final List<Item> items;
+  public final long totalMs;
+
+  public static class Item {
+
+    public final int index;
+    public final JResponse response;
+    public final String error;
+    public final long elapsedMs;
+
+    public Item(int index, JResponse response, String error, long elapsedMs) {
+      this.index = index;
+      this.response = response;
+      this.error = error;
+      this.elapsedMs = elapsedMs;
+    }
+
+    public boolean isOk() {
+      return error == null;
+    }
+  }
+
+  public JBatchResult(List<Item> items, long totalMs) {
+    this.items = items;
+    this.totalMs = totalMs;
+  }
+
+  // Responses in input order, null for failed requests
+  public List<JResponse> getResponses() {
+    List<JResponse> result = new ArrayList<>();
+    items.forEach(it -> result.add(it.response));
+    return result;
+  }
+
+  public int getFailed() {
+    return (int) items.stream().filter(it -> !it.isOk()).count();
+  }
+}
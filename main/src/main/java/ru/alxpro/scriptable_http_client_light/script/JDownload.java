@@ -0,0 +1,25 @@
+package ru.alxpro.scriptable_http_client_light.script;
+
+import java.util.Map;
+
+public class JDownload {
+
+  public final int status;
+  public final String path;
+  public final long bytes;
+  public final String digest;
+  public final Map<String, String> headers;
+
+  public JDownload(int status, String path, long bytes, String digest, Map<String, String> headers) {
+    this.status = status;
+    this.path = path;
+    this.bytes = bytes;
+    this.digest = digest;
+    this.headers = headers;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[%d] %s (%d bytes, %s)", status, path, bytes, digest);
+  }
+}
@@ -0,0 +1,150 @@
+package ru.alxpro.scriptable_http_client_light.script;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Callbacks (then, thenDo, onError) run on the script thread that created the future, while
+// it waits in await()/join() or when its script ends, never on http-async-* threads: the
+// script's global is not thread-safe, and a blocking call there could starve the dispatcher
+public class JFuture<T> extends CompletableFuture<T> {
+
+  private final Callbacks callbacks;
+
+  public JFuture() {
+    this(Callbacks.CURRENT.get());
+  }
+
+  private JFuture(Callbacks callbacks) {
+    this.callbacks = callbacks;
+  }
+
+  @Override
+  public <U> CompletableFuture<U> newIncompleteFuture() {
+    return new JFuture<>(callbacks);
+  }
+
+  // JS: http.getAsync(url).then(function (r) { ... })
+  @SuppressWarnings("unchecked")
+  public <U> JFuture<U> then(Function<? super T, ? extends U> fn) {
+    return callbacks.track((JFuture<U>) thenApplyAsync(fn, callbacks));
+  }
+
+  @SuppressWarnings("unchecked")
+  public JFuture<Void> thenDo(Consumer<? super T> fn) {
+    return callbacks.track((JFuture<Void>) thenAcceptAsync(fn, callbacks));
+  }
+
+  @SuppressWarnings("unchecked")
+  public JFuture<T> onError(Function<Throwable, ? extends T> fn) {
+    return callbacks.track((JFuture<T>) handleAsync(
+        (value, e) -> e == null ? value : fn.apply(unwrap(e)), callbacks));
+  }
+
+  @Override
+  public T join() {
+    callbacks.runUntil(this);
+    return super.join();
+  }
+
+  @Override
+  public T get() throws InterruptedException, ExecutionException {
+    callbacks.runUntil(this);
+    return super.get();
+  }
+
+  // Same as join(), but rethrows the original cause for readable JS errors
+  public T await() {
+    try {
+      return join();
+    } catch (CompletionException e) {
+      Throwable cause = unwrap(e);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause.getMessage(), cause);
+    }
+  }
+
+  // Script end: runs the callbacks of this thread nobody awaited
+  public static void runPending() {
+    Callbacks.CURRENT.get().runPending();
+  }
+
+  // Script failed: its pending callbacks are dropped
+  public static void clearPending() {
+    Callbacks.CURRENT.get().clear();
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  // Callback queue of one script thread
+  private static final class Callbacks implements Executor {
+
+    static final ThreadLocal<Callbacks> CURRENT = ThreadLocal.withInitial(Callbacks::new);
+    private static final Runnable WAKE_UP = () -> { };
+    private final Thread owner = Thread.currentThread();
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    // Callback futures registered on the owner thread, until the script ends
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable task) {
+      if (Thread.currentThread() == owner) {
+        // Registered on an already completed future
+        task.run();
+      } else {
+        queue.add(task);
+      }
+    }
+
+    <U> JFuture<U> track(JFuture<U> future) {
+      if (Thread.currentThread() == owner) {
+        pending.add(future);
+      }
+      return future;
+    }
+
+    // Another thread's future is just waited for
+    void runUntil(CompletableFuture<?> future) {
+      if (Thread.currentThread() != owner || future.isDone()) {
+        return;
+      }
+      future.whenComplete((value, e) -> queue.add(WAKE_UP));
+      try {
+        while (!future.isDone()) {
+          queue.take().run();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for async result", e);
+      }
+    }
+
+    void runPending() {
+      // Callbacks may chain further ones
+      while (!pending.isEmpty()) {
+        List<CompletableFuture<?>> batch = new ArrayList<>(pending);
+        pending.clear();
+        batch.forEach(this::runUntil);
+      }
+      Runnable task;
+      while ((task = queue.poll()) != null) {
+        task.run();
+      }
+    }
+
+    void clear() {
+      pending.clear();
+      queue.clear();
+    }
+  }
+}
@@ -1,12 +1,146 @@
 package ru.alxpro.scriptable_http_client_light.script;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import ru.alxpro.scriptable_http_client_light.utils.ByteBufferPool;
+
 public class JResponse {
 
   public final int status;
-  public final String body;
+  private ByteBuffer content;
+  private final Map<String, List<String>> rawHeaders;
+  private final ByteBufferPool pool;
+  private volatile String body;
+  private volatile Map<String, String> headers;
+  private final JTimings timings;
 
   public JResponse(int s, String b) {
     this.status = s;
     this.body = b;
+    this.content = null;
+    this.rawHeaders = Collections.emptyMap();
+    this.pool = null;
+    this.timings = null;
+  }
+
+  // Content is decoded on first getBody(), headers are copied on first access
+  public JResponse(
+      int status, ByteBuffer content, Map<String, List<String>> rawHeaders, ByteBufferPool pool
+  ) {
+    this(status, content, rawHeaders, pool, null);
+  }
+
+  public JResponse(
+      int status, ByteBuffer content, Map<String, List<String>> rawHeaders, ByteBufferPool pool,
+      JTimings timings
+  ) {
+    this.status = status;
+    this.content = content;
+    this.rawHeaders = rawHeaders != null ? rawHeaders : Collections.emptyMap();
+    this.pool = pool;
+    this.timings = timings;
+  }
+
+  // JS: resp.timings.ttfb, null for responses not made by a client
+  public JTimings getTimings() {
+    return timings;
+  }
+
+  public String getBody() {
+    String result = body;
+    if (result == null) {
+      synchronized (this) {
+        if (body == null && content != null) {
+          body = getCharset().decode(content.duplicate()).toString();
+          // Pooled bytes are not needed once decoded
+          if (pool != null) {
+            release();
+          }
+        }
+        result = body;
+      }
+    }
+    return result;
+  }
+
+  public synchronized byte[] getBytes() {
+    if (content == null) {
+      return body != null ? body.getBytes(getCharset()) : new byte[0];
+    }
+    byte[] bytes = new byte[content.remaining()];
+    content.duplicate().get(bytes);
+    return bytes;
+  }
+
+  public synchronized int getLength() {
+    if (content != null) {
+      return content.remaining();
+    }
+    return body != null ? body.getBytes(getCharset()).length : 0;
+  }
+
+  public String header(String name) {
+    return getHeaders().get(name);
+  }
+
+  public Map<String, String> getHeaders() {
+    Map<String, String> result = headers;
+    if (result == null) {
+      Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      rawHeaders.forEach((k, v) -> map.put(k, String.join(", ", v)));
+      result = Collections.unmodifiableMap(map);
+      headers = result;
+    }
+    return result;
+  }
+
+  public Map<String, List<String>> getRawHeaders() {
+    return new LinkedHashMap<>(rawHeaders);
+  }
+
+  public String getContentType() {
+    for (Map.Entry<String, List<String>> e : rawHeaders.entrySet()) {
+      if ("Content-Type".equalsIgnoreCase(e.getKey()) && !e.getValue().isEmpty()) {
+        return e.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+  public Charset getCharset() {
+    String cType = getContentType();
+    if (cType != null) {
+      for (String param : cType.split(";")) {
+        String p = param.trim();
+        if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+          try {
+            return Charset.forName(p.substring(8).replace("\"", "").trim());
+          } catch (Exception ignored) {
+          }
+        }
+      }
+    }
+    return UTF_8;
+  }
+
+  // Returns a pooled buffer without decoding, e.g. in status-only loops.
+  // Undecoded content is gone after this call.
+  public synchronized void release() {
+    if (content != null && pool != null) {
+      pool.release(content);
+      content = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JResponse[" + status + "]";
   }
 }
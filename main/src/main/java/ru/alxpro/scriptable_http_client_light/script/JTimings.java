@@ -0,0 +1,56 @@
+package ru.alxpro.scriptable_http_client_light.script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Milliseconds per phase of one request, -1 when the transport can't observe a phase
+public class JTimings {
+
+  public final double queued;
+  public final double dns;
+  public final double connect;
+  public final double tls;
+  public final double sent;
+  public final double ttfb;
+  public final double download;
+  public final double total;
+  // null when unknown (http2 transport)
+  public final Boolean reused;
+
+  public JTimings(
+      double queued, double dns, double connect, double tls, double sent, double ttfb,
+      double download, double total, Boolean reused
+  ) {
+    this.queued = queued;
+    this.dns = dns;
+    this.connect = connect;
+    this.tls = tls;
+    this.sent = sent;
+    this.ttfb = ttfb;
+    this.download = download;
+    this.total = total;
+    this.reused = reused;
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("queued", queued);
+    map.put("dns", dns);
+    map.put("connect", connect);
+    map.put("tls", tls);
+    map.put("sent", sent);
+    map.put("ttfb", ttfb);
+    map.put("download", download);
+    map.put("total", total);
+    map.put("reused", reused);
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "total=%.1fms (queued=%.1f dns=%.1f connect=%.1f tls=%.1f sent=%.1f ttfb=%.1f"
+            + " download=%.1f reused=%s)",
+        total, queued, dns, connect, tls, sent, ttfb, download, reused);
+  }
+}
@@ -3,10 +3,13 @@ package ru.alxpro.scriptable_http_client_light.script;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class SharedContext {
 
   private final Map<String, Object> memory = new ConcurrentHashMap<>();
+  // Per-thread values over the shared ones, e.g. SCRIPT_KEY for concurrent load iterations
+  private final ThreadLocal<Map<String, Object>> local = new ThreadLocal<>();
 
   public <T> void put(String k, T v) {
     memory.put(k, v);
@@ -14,9 +17,48 @@ public class SharedContext {
 
   @SuppressWarnings("unchecked")
   public <T> T get(String k) {
+    Map<String, Object> own = local.get();
+    if (own != null && own.containsKey(k)) {
+      return (T) own.get(k);
+    }
     return (T) memory.get(k);
   }
 
+  // Seen by get() on the current thread only
+  public <T> void putLocal(String k, T v) {
+    Map<String, Object> own = local.get();
+    if (own == null) {
+      own = new HashMap<>();
+      local.set(own);
+    }
+    own.put(k, v);
+  }
+
+  public void removeLocal(String k) {
+    Map<String, Object> own = local.get();
+    if (own != null) {
+      own.remove(k);
+    }
+  }
+
+  // Runs the task with the calling thread's local values, for work handed to other threads
+  public <T> Supplier<T> propagate(Supplier<T> task) {
+    Map<String, Object> own = local.get();
+    if (own == null || own.isEmpty()) {
+      return task;
+    }
+    Map<String, Object> copy = new HashMap<>(own);
+    return () -> {
+      Map<String, Object> previous = local.get();
+      local.set(copy);
+      try {
+        return task.get();
+      } finally {
+        local.set(previous);
+      }
+    };
+  }
+
   public Map<String, Object> getAll() {
     return new HashMap<>(memory);
   }
@@ -0,0 +1,93 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import ru.alxpro.scriptable_http_client_light.script.JFuture;
+import ru.alxpro.scriptable_http_client_light.utils.VirtualThreads;
+
+public class AsyncDispatcher {
+
+  private final int maxInFlight;
+  private final Semaphore permits;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService timer;
+
+  // virtual: run the blocking calls on virtual threads, so maxInFlight can go far beyond
+  // what a platform pool affords
+  public AsyncDispatcher(int maxInFlight, boolean virtual) {
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.permits = new Semaphore(this.maxInFlight);
+    // Permits bound the number of tasks, so the pool never has to queue
+    this.executor = new ThreadPoolExecutor(0, this.maxInFlight, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), VirtualThreads.factory("http-async-", virtual));
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "http-async-timer");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  // Blocks the caller while maxInFlight tasks are running (backpressure)
+  public <T> JFuture<T> submit(Supplier<T> task) {
+    return submit(task, 0);
+  }
+
+  // The task starts after delayNanos without parking a worker thread meanwhile,
+  // a waiting task still holds its in-flight slot
+  public <T> JFuture<T> submit(Supplier<T> task, long delayNanos) {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for async slot", e);
+    }
+    JFuture<T> future = new JFuture<>();
+    Runnable run = () -> {
+      try {
+        executor.execute(() -> {
+          try {
+            future.complete(task.get());
+          } catch (Throwable e) {
+            future.completeExceptionally(e);
+          } finally {
+            permits.release();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        future.completeExceptionally(e);
+      }
+    };
+    if (delayNanos > 0) {
+      try {
+        timer.schedule(run, delayNanos, TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        future.completeExceptionally(e);
+      }
+    } else {
+      run.run();
+    }
+    return future;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public int getInFlight() {
+    return maxInFlight - permits.availablePermits();
+  }
+
+  public void close() {
+    timer.shutdownNow();
+    executor.shutdownNow();
+  }
+}
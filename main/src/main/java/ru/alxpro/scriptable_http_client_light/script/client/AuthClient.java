@@ -3,11 +3,14 @@ package ru.alxpro.scriptable_http_client_light.script.client;
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.core.Form;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.util.concurrent.locks.ReentrantLock;
 import ru.alxpro.scriptable_http_client_light.script.AppConfig;
 import ru.alxpro.scriptable_http_client_light.script.Utils;
+import ru.alxpro.scriptable_http_client_light.utils.JfrEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +23,8 @@ public class AuthClient extends BaseClient {
   // Refresh 10 seconds before actual expiration
   private static final long SAFETY_BUFFER_MS = 10_000;
   private final Utils utils;
+  // Not synchronized: the token request blocks, which would pin a virtual thread
+  private final ReentrantLock lock = new ReentrantLock();
 
   private static class TokenResponse {
 
@@ -30,12 +35,23 @@ public class AuthClient extends BaseClient {
     long expiresIn;
   }
 
-  public AuthClient(AppConfig config, Utils utils) {
-    super(config);
+  public AuthClient(AppConfig config, HttpTransport transport, Utils utils) {
+    super(config, transport);
     this.utils = utils;
   }
 
-  public synchronized String getToken(
+  public String getToken(
+      String tokenUrl, String clientId, String clientSecret, String scope
+  ) {
+    lock.lock();
+    try {
+      return getTokenLocked(tokenUrl, clientId, clientSecret, scope);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private String getTokenLocked(
       String tokenUrl, String clientId, String clientSecret, String scope
   ) {
     long delta = tokenExpirationTime - SAFETY_BUFFER_MS;
@@ -45,6 +61,8 @@ public class AuthClient extends BaseClient {
     if (tokenUrl == null || clientId == null || clientSecret == null) {
       throw new RuntimeException("OAuth credentials missing in config");
     }
+    JfrEvents.TokenFetch event = new JfrEvents.TokenFetch();
+    event.begin();
     log.info("OAuth token from {}", tokenUrl);
     log.info("Client Scope: {}", scope);
     log.info("Client Id: {}", clientId);
@@ -58,11 +76,12 @@ public class AuthClient extends BaseClient {
       }
       // Execute Request
       String auth = clientId + ":" + clientSecret;
-      try (Response response = httpClient.target(tokenUrl)
+      Invocation.Builder request = httpClient.target(tokenUrl)
           .request(MediaType.APPLICATION_JSON_TYPE)
-          .header("Authorization", "Basic " + utils.toBase64(auth))
-          .post(Entity.form(form))) {
+          .header("Authorization", "Basic " + utils.toBase64(auth));
+      try (Response response = execute("POST", tokenUrl, () -> request.post(Entity.form(form)))) {
         String jsonBody = response.readEntity(String.class);
+        finishTimer();
         if (response.getStatus() == 200) {
           TokenResponse tokenResp = gson.fromJson(jsonBody, TokenResponse.class);
           if (tokenResp.accessToken == null) {
@@ -73,6 +92,8 @@ public class AuthClient extends BaseClient {
           long expiresInSec = tokenResp.expiresIn > 0 ? tokenResp.expiresIn : 3600;
           this.tokenExpirationTime = System.currentTimeMillis() + (expiresInSec * 1000);
           log.info("Token refreshed. Valid for {}s", expiresInSec);
+          transport.getMetrics().tokenRefresh(true);
+          event.success = true;
           return accessToken;
         }
         log.error("Auth failed. Status: {}, Body: {}", response.getStatus(), jsonBody);
@@ -80,7 +101,15 @@ public class AuthClient extends BaseClient {
       }
     } catch (Exception e) {
       this.accessToken = null;
+      transport.getMetrics().tokenRefresh(false);
       throw new RuntimeException("Auth error: " + e.getMessage(), e);
+    } finally {
+      failTimer();
+      event.end();
+      if (event.shouldCommit()) {
+        event.url = tokenUrl;
+        event.commit();
+      }
     }
   }
 }
\ No newline at end of file
@@ -1,32 +1,218 @@
 package ru.alxpro.scriptable_http_client_light.script.client;
 
-import static java.lang.Integer.parseInt;
-
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+import ru.alxpro.scriptable_http_client_light.script.JTimings;
 import ru.alxpro.scriptable_http_client_light.script.AppConfig;
-import ru.alxpro.scriptable_http_client_light.utils.HttpUtils;
-import ru.alxpro.scriptable_http_client_light.utils.Slf4jLogFilter;
+import ru.alxpro.scriptable_http_client_light.script.JResponse;
+import ru.alxpro.scriptable_http_client_light.utils.ByteBufferPool;
+import ru.alxpro.scriptable_http_client_light.utils.CompressionFilter;
+import ru.alxpro.scriptable_http_client_light.utils.HarRecorder;
+import ru.alxpro.scriptable_http_client_light.utils.HttpCacheFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 abstract class BaseClient {
 
+  private static final Logger log = LoggerFactory.getLogger(BaseClient.class);
+  private static final Logger httpLog = LoggerFactory.getLogger("HTTP");
   protected final AppConfig config;
+  protected final HttpTransport transport;
   protected final Client httpClient;
 
-  protected BaseClient(AppConfig config) {
+  protected BaseClient(AppConfig config, HttpTransport transport) {
     this.config = config;
+    this.transport = transport;
     try {
       ClientBuilder builder = ClientBuilder.newBuilder();
-
-      httpClient = builder
-          .sslContext(HttpUtils.getTrustAllCertsSslCtx())
-          .hostnameVerifier((hostname, session) -> true)
+      builder
+          .withConfig(transport.newClientConfig())
+          .sslContext(transport.getSslContext())
+          .hostnameVerifier(transport.getHostnameVerifier())
           //.property(ClientProperties.CONNECT_TIMEOUT, 10_000)
           //.property(ClientProperties.READ_TIMEOUT, 60_000)
-          .register(new Slf4jLogFilter(parseInt(config.get(AppConfig.MAX_BODY_LOG_SIZE))))
-          .build();
+          .register(transport.getLogFilter());
+      if (transport.getHar() != null) {
+        builder.register(transport.getHar(), HarRecorder.PRIORITY);
+      }
+      if (transport.getCompression() != null) {
+        builder.register(transport.getCompression(), CompressionFilter.PRIORITY);
+      }
+      if (transport.getCache() != null) {
+        builder.register(transport.getCache(), HttpCacheFilter.PRIORITY);
+      }
+      httpClient = builder.build();
     } catch (Exception e) {
       throw new RuntimeException(e.getMessage(), e);
     }
   }
-}
+
+  // Keeps raw bytes, JResponse decodes the body only when it is read
+  protected JResponse toJResponse(Response response) throws IOException {
+    ByteBufferPool pool = transport.getBufferPool();
+    ByteBuffer content;
+    if (!response.hasEntity()) {
+      content = ByteBuffer.allocate(0);
+    } else if (pool != null) {
+      try (InputStream in = response.readEntity(InputStream.class)) {
+        content = pool.read(in, response.getLength());
+      }
+    } else {
+      content = ByteBuffer.wrap(response.readEntity(byte[].class));
+    }
+    return new JResponse(
+        response.getStatus(), content, response.getStringHeaders(), pool, finishTimer());
+  }
+
+  // Timings of the request on this thread, once its body has been read
+  protected JTimings finishTimer() {
+    RequestTimer timer = RequestTimer.current();
+    if (timer == null) {
+      return null;
+    }
+    timer.done();
+    RequestTimer.clear();
+    if (timer.endpoint != null) {
+      timer.endpoint.record(timer.status, timer.elapsedNanos());
+    }
+    JTimings timings = timer.toTimings();
+    httpLog.debug("< Time: {}", timings);
+    return timings;
+  }
+
+  // Records a request whose body read failed with status 0; no-op once finishTimer ran.
+  // Clients call it in finally so a failed read neither leaks the timer nor goes uncounted
+  protected void failTimer() {
+    RequestTimer timer = RequestTimer.current();
+    if (timer != null) {
+      timer.status = 0;
+      finishTimer();
+    }
+  }
+
+  // Rate limit, retry, retry budget and circuit breaker of the target host, see HostPolicy
+  protected Response execute(String method, String url, Supplier<Response> call) {
+    return execute(method, url, null, call, 0);
+  }
+
+  // operation: SOAP operation, recorded as its own endpoint
+  protected Response execute(
+      String method, String url, String operation, Supplier<Response> call
+  ) {
+    return execute(method, url, operation, call, 0);
+  }
+
+  // queuedSince != 0: async request submitted at that time (nanoTime),
+  // its first rate limit slot was reserved on submit
+  protected Response execute(
+      String method, String url, String operation, Supplier<Response> call, long queuedSince
+  ) {
+    RequestTimer timer = RequestTimer.start(queuedSince != 0 ? queuedSince : System.nanoTime());
+    timer.endpoint = transport.getMetrics().endpoint(method, url, operation);
+    try {
+      Response response = attempts(method, url, call, queuedSince, timer);
+      // Recorded once the caller has read the body, see finishTimer
+      timer.status = response.getStatus();
+      return response;
+    } catch (RuntimeException e) {
+      finishTimer();
+      throw e;
+    }
+  }
+
+  private Response attempts(
+      String method, String url, Supplier<Response> call, long queuedSince, RequestTimer timer
+  ) {
+    String host = hostOf(url);
+    HostPolicy policy = transport.policyFor(host);
+    CircuitBreaker breaker = policy.breaker;
+    boolean retryable = policy.canRetry(method);
+    policy.onCall();
+    for (int attempt = 1; ; attempt++) {
+      long ticket = breaker != null ? breaker.tryAcquire() : 0;
+      if (ticket == CircuitBreaker.REJECTED) {
+        throw new RuntimeException("Circuit open for " + host);
+      }
+      Response response;
+      try {
+        if (attempt > 1 || queuedSince == 0) {
+          pauseNanos(policy.reserve());
+        }
+        timer.newAttempt();
+        response = call.get();
+      } catch (ProcessingException e) {
+        if (breaker != null) {
+          breaker.onFailure(ticket);
+        }
+        if (!retryable || !policy.retryOnException || attempt >= policy.maxAttempts
+            || !policy.tryRetry()) {
+          throw e;
+        }
+        log.warn("{} {} failed: {}. Retry {}/{}",
+            method, url, e.getMessage(), attempt, policy.maxAttempts - 1);
+        pause(policy.delayMs(attempt, null));
+        continue;
+      } catch (RuntimeException e) {
+        // Failed on this side (filter, connector, interrupt), not a verdict on the host
+        if (breaker != null) {
+          breaker.release(ticket);
+        }
+        throw e;
+      }
+      int status = response.getStatus();
+      if (breaker != null) {
+        if (status >= 500) {
+          breaker.onFailure(ticket);
+        } else {
+          breaker.onSuccess(ticket);
+        }
+      }
+      if (!retryable || !policy.isRetryStatus(status) || attempt >= policy.maxAttempts
+          || !policy.tryRetry()) {
+        return response;
+      }
+      String retryAfter = response.getHeaderString("Retry-After");
+      response.close();
+      log.warn("{} {} returned {}. Retry {}/{}",
+          method, url, status, attempt, policy.maxAttempts - 1);
+      pause(policy.delayMs(attempt, retryAfter));
+    }
+  }
+
+  // Reserves a rate limit slot, returns the nanos to wait before sending
+  protected long reserve(String url) {
+    return transport.policyFor(hostOf(url)).reserve();
+  }
+
+  static String hostOf(String url) {
+    try {
+      String host = URI.create(url).getHost();
+      return host != null ? host.toLowerCase() : "";
+    } catch (IllegalArgumentException e) {
+      return "";
+    }
+  }
+
+  private static void pause(long ms) {
+    pauseNanos(ms * 1_000_000);
+  }
+
+  private static void pauseNanos(long nanos) {
+    if (nanos <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Retry interrupted", e);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Count-based sliding window; OPEN rejects calls until openMs passes, then
+// HALF_OPEN lets a few probes through: one failure reopens, all successes close.
+// Every transition starts a new generation; a call only counts in the generation it was
+// admitted in, so calls still in flight from an earlier state cannot close or reopen it
+class CircuitBreaker {
+
+  private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  enum State { CLOSED, OPEN, HALF_OPEN }
+
+  // Ticket of a call the breaker did not let through
+  static final long REJECTED = -1;
+
+  private final String name;
+  private final boolean[] window;
+  private final int minCalls;
+  private final int failureRate;
+  private final long openMs;
+  private final int halfOpenProbes;
+  private State state = State.CLOSED;
+  private int position;
+  private int calls;
+  private int failures;
+  private long openedAt;
+  private long generation;
+  private int probesInFlight;
+  private int probesSucceeded;
+  private long rejected;
+  private long opened;
+
+  CircuitBreaker(String name, int window, int minCalls, int failureRate, long openMs, int probes) {
+    this.name = name;
+    this.window = new boolean[Math.max(1, window)];
+    this.minCalls = Math.max(1, minCalls);
+    this.failureRate = failureRate;
+    this.openMs = openMs;
+    this.halfOpenProbes = Math.max(1, probes);
+  }
+
+  // Ticket to hand back to onSuccess, onFailure or release; REJECTED if the call must not run
+  synchronized long tryAcquire() {
+    if (state == State.OPEN) {
+      if (System.currentTimeMillis() - openedAt < openMs) {
+        rejected++;
+        return REJECTED;
+      }
+      transition(State.HALF_OPEN);
+    }
+    if (state == State.HALF_OPEN) {
+      if (probesInFlight >= halfOpenProbes) {
+        rejected++;
+        return REJECTED;
+      }
+      probesInFlight++;
+    }
+    return generation;
+  }
+
+  synchronized void onSuccess(long ticket) {
+    if (ticket != generation) {
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      probesInFlight--;
+      if (++probesSucceeded >= halfOpenProbes) {
+        transition(State.CLOSED);
+      }
+      return;
+    }
+    record(false);
+  }
+
+  synchronized void onFailure(long ticket) {
+    if (ticket != generation) {
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      probesInFlight--;
+      transition(State.OPEN);
+      return;
+    }
+    record(true);
+    if (state == State.CLOSED && calls >= minCalls && failures * 100 >= failureRate * calls) {
+      transition(State.OPEN);
+    }
+  }
+
+  // Call acquired but never made: frees its probe slot without counting it
+  synchronized void release(long ticket) {
+    if (ticket == generation && state == State.HALF_OPEN) {
+      probesInFlight--;
+    }
+  }
+
+  private void record(boolean failed) {
+    if (calls == window.length) {
+      if (window[position]) {
+        failures--;
+      }
+    } else {
+      calls++;
+    }
+    window[position] = failed;
+    if (failed) {
+      failures++;
+    }
+    position = (position + 1) % window.length;
+  }
+
+  private void transition(State next) {
+    log.warn("Circuit breaker [{}]: {} -> {}", name, state, next);
+    state = next;
+    generation++;
+    probesInFlight = 0;
+    probesSucceeded = 0;
+    if (next == State.OPEN) {
+      openedAt = System.currentTimeMillis();
+      opened++;
+    } else if (next == State.CLOSED) {
+      calls = 0;
+      failures = 0;
+      position = 0;
+    }
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  synchronized Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("state", state);
+    stats.put("calls", calls);
+    stats.put("failures", failures);
+    stats.put("failureRate", calls == 0 ? 0 : failures * 100 / calls);
+    stats.put("opened", opened);
+    stats.put("rejected", rejected);
+    return stats;
+  }
+}
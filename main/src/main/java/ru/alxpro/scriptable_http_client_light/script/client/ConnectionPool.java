@@ -0,0 +1,220 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import ru.alxpro.scriptable_http_client_light.script.AppConfig;
+import ru.alxpro.scriptable_http_client_light.utils.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ConnectionPool {
+
+  private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+  private final PoolingHttpClientConnectionManager manager;
+  private final ScheduledExecutorService evictor;
+  private final AtomicLong created = new AtomicLong();
+
+  public ConnectionPool(AppConfig config, TlsContext tls) {
+    Registry<ConnectionSocketFactory> registry = RegistryBuilder
+        .<ConnectionSocketFactory>create()
+        .register("http", new TimedPlainSocketFactory())
+        .register("https", tls.newSocketFactory())
+        .build();
+    // Count physical connections, so reuse is visible in stats
+    var connFactory = new ManagedHttpClientConnectionFactory() {
+      @Override
+      public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig cfg) {
+        created.incrementAndGet();
+        return super.create(route, cfg);
+      }
+    };
+    DnsResolver dns = host -> {
+      long start = System.nanoTime();
+      try {
+        return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+      } finally {
+        RequestTimer.recordDns(System.nanoTime() - start);
+      }
+    };
+    int maxTotal = config.getInt(AppConfig.POOL_MAX_TOTAL, 200);
+    boolean virtual = Boolean.parseBoolean(config.get(AppConfig.THREADS_VIRTUAL, "false"))
+        && VirtualThreads.isSupported();
+    manager = virtual ? new GatedManager(registry, connFactory, dns, maxTotal)
+        : new PoolingHttpClientConnectionManager(registry, connFactory, dns);
+    manager.setMaxTotal(maxTotal);
+    manager.setDefaultMaxPerRoute(config.getInt(AppConfig.POOL_MAX_PER_ROUTE, 20));
+    manager.setValidateAfterInactivity(config.getInt(AppConfig.POOL_VALIDATE_AFTER, 2000));
+
+    long idleTtl = config.getLong(AppConfig.POOL_IDLE_TTL, 30_000);
+    evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "pool-evictor");
+      t.setDaemon(true);
+      return t;
+    });
+    if (idleTtl > 0) {
+      long period = Math.max(1000, Math.min(idleTtl / 2, 5000));
+      evictor.scheduleWithFixedDelay(() -> {
+        manager.closeExpiredConnections();
+        manager.closeIdleConnections(idleTtl, MILLISECONDS);
+      }, period, period, MILLISECONDS);
+    }
+    log.info("Connection pool: maxTotal={}, maxPerRoute={}, idleTtl={}ms",
+        manager.getMaxTotal(), manager.getDefaultMaxPerRoute(), idleTtl);
+  }
+
+  PoolingHttpClientConnectionManager getManager() {
+    return manager;
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    PoolStats total = manager.getTotalStats();
+    stats.put("maxTotal", total.getMax());
+    stats.put("maxPerRoute", manager.getDefaultMaxPerRoute());
+    stats.put("leased", total.getLeased());
+    stats.put("available", total.getAvailable());
+    stats.put("pending", total.getPending());
+    stats.put("created", created.get());
+    Map<String, Object> routes = new LinkedHashMap<>();
+    for (HttpRoute route : manager.getRoutes()) {
+      PoolStats rs = manager.getStats(route);
+      Map<String, Object> item = new LinkedHashMap<>();
+      item.put("leased", rs.getLeased());
+      item.put("available", rs.getAvailable());
+      item.put("pending", rs.getPending());
+      item.put("max", rs.getMax());
+      routes.put(route.getTargetHost().toURI(), item);
+    }
+    stats.put("routes", routes);
+    return stats;
+  }
+
+  public void close() {
+    evictor.shutdownNow();
+    manager.shutdown();
+  }
+
+  // Apache's pool waits for a free connection inside a monitor, which pins a virtual thread
+  // to its carrier; once every carrier is pinned, no holder can run to give its connection
+  // back. Lease slots come from semaphores first, so the pool itself never has to wait
+  private static class GatedManager extends PoolingHttpClientConnectionManager {
+
+    private final Semaphore total;
+    private final Map<HttpRoute, Semaphore> routes = new ConcurrentHashMap<>();
+    private final Map<HttpClientConnection, Semaphore> leased = new ConcurrentHashMap<>();
+
+    GatedManager(
+        Registry<ConnectionSocketFactory> registry,
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory,
+        DnsResolver dns, int maxTotal
+    ) {
+      super(registry, connFactory, dns);
+      this.total = new Semaphore(maxTotal, true);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+      Semaphore slots = routes.computeIfAbsent(route, r -> new Semaphore(getMaxPerRoute(r), true));
+      ConnectionRequest request = super.requestConnection(route, state);
+      return new ConnectionRequest() {
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+          long deadline = System.nanoTime() + unit.toNanos(timeout);
+          acquire(slots, timeout, deadline);
+          try {
+            acquire(total, timeout, deadline);
+          } catch (InterruptedException | ConnectionPoolTimeoutException e) {
+            slots.release();
+            throw e;
+          }
+          try {
+            HttpClientConnection conn = request.get(timeout, unit);
+            leased.put(conn, slots);
+            return conn;
+          } catch (InterruptedException | ExecutionException | RuntimeException
+                   | ConnectionPoolTimeoutException e) {
+            slots.release();
+            total.release();
+            throw e;
+          }
+        }
+
+        @Override
+        public boolean cancel() {
+          return request.cancel();
+        }
+      };
+    }
+
+    // timeout <= 0 waits for good, as the pool does
+    private static void acquire(Semaphore slots, long timeout, long deadline)
+        throws InterruptedException, ConnectionPoolTimeoutException {
+      if (timeout <= 0) {
+        slots.acquire();
+      } else if (!slots.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+      }
+    }
+
+    @Override
+    public void releaseConnection(
+        HttpClientConnection conn, Object state, long keepalive, TimeUnit unit) {
+      try {
+        super.releaseConnection(conn, state, keepalive, unit);
+      } finally {
+        Semaphore slots = leased.remove(conn);
+        if (slots != null) {
+          slots.release();
+          total.release();
+        }
+      }
+    }
+  }
+
+  private static class TimedPlainSocketFactory extends PlainConnectionSocketFactory {
+
+    @Override
+    public Socket connectSocket(
+        int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+        InetSocketAddress localAddress, HttpContext context) throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.connectSocket(
+            connectTimeout, socket, host, remoteAddress, localAddress, context);
+      } finally {
+        RequestTimer.recordConnect(System.nanoTime() - start);
+      }
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import ru.alxpro.scriptable_http_client_light.script.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Retry settings, retry budget, circuit breaker and rate limit of one host
+class HostPolicy {
+
+  private static final Logger log = LoggerFactory.getLogger(HostPolicy.class);
+  // Budget is kept in thousandths of a retry
+  private static final long UNIT = 1000;
+  final int maxAttempts;
+  private final Set<String> methods = new HashSet<>();
+  private final Set<Integer> statuses = new HashSet<>();
+  final boolean retryOnException;
+  private final long backoff;
+  private final long maxBackoff;
+  private final double jitter;
+  private final long budgetDeposit;
+  private final long budgetCap;
+  private final AtomicLong budget;
+  final CircuitBreaker breaker;
+  private volatile RateLimiter limiter;
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder budgetExhausted = new LongAdder();
+
+  HostPolicy(AppConfig config, String host) {
+    maxAttempts = Math.max(1, (int) number(config, host, AppConfig.RETRY_MAX_ATTEMPTS, 1));
+    for (String m : config.getForHost(host, AppConfig.RETRY_METHODS).split(",")) {
+      if (!m.isBlank()) {
+        methods.add(m.trim().toUpperCase());
+      }
+    }
+    for (String s : config.getForHost(host, AppConfig.RETRY_STATUSES).split(",")) {
+      if (!s.isBlank()) {
+        statuses.add((int) parse(AppConfig.RETRY_STATUSES, s, 0));
+      }
+    }
+    retryOnException = Boolean.parseBoolean(
+        config.getForHost(host, AppConfig.RETRY_ON_EXCEPTION));
+    backoff = (long) number(config, host, AppConfig.RETRY_BACKOFF, 200);
+    maxBackoff = (long) number(config, host, AppConfig.RETRY_MAX_BACKOFF, 5000);
+    jitter = Math.max(0, Math.min(1, number(config, host, AppConfig.RETRY_JITTER, 0.5)));
+    budgetDeposit = (long) (number(config, host, AppConfig.RETRY_BUDGET_RATIO, 0.2) * UNIT);
+    budgetCap = (long) number(config, host, AppConfig.RETRY_BUDGET_MIN, 10) * UNIT;
+    budget = new AtomicLong(budgetCap);
+    if (Boolean.parseBoolean(config.getForHost(host, AppConfig.BREAKER_ENABLED))) {
+      breaker = new CircuitBreaker(host,
+          (int) number(config, host, AppConfig.BREAKER_WINDOW, 20),
+          (int) number(config, host, AppConfig.BREAKER_MIN_CALLS, 10),
+          (int) number(config, host, AppConfig.BREAKER_FAILURE_RATE, 50),
+          (long) number(config, host, AppConfig.BREAKER_OPEN_MS, 10_000),
+          (int) number(config, host, AppConfig.BREAKER_HALF_OPEN_PROBES, 1));
+    } else {
+      breaker = null;
+    }
+    setLimit(number(config, host, AppConfig.LIMIT_RPS, 0),
+        (int) number(config, host, AppConfig.LIMIT_BURST, 1));
+  }
+
+  // rps <= 0 removes the limit
+  void setLimit(double rps, int burst) {
+    limiter = rps > 0 ? new RateLimiter(rps, burst) : null;
+  }
+
+  // Nanos to wait before the next request may be sent
+  long reserve() {
+    RateLimiter current = limiter;
+    return current != null ? current.reserve() : 0;
+  }
+
+  private static double number(AppConfig config, String host, String key, double def) {
+    return parse(key, config.getForHost(host, key), def);
+  }
+
+  private static double parse(String key, String value, double def) {
+    try {
+      return value != null ? Double.parseDouble(value.trim()) : def;
+    } catch (NumberFormatException e) {
+      log.warn("Invalid number value of {}: {}", key, value);
+      return def;
+    }
+  }
+
+  boolean canRetry(String method) {
+    return maxAttempts > 1 && methods.contains(method.toUpperCase());
+  }
+
+  boolean isRetryStatus(int status) {
+    return statuses.contains(status);
+  }
+
+  // Every first attempt refills the budget by retry.budget.ratio
+  void onCall() {
+    calls.increment();
+    budget.accumulateAndGet(budgetDeposit, (cur, add) -> Math.min(budgetCap, cur + add));
+  }
+
+  boolean tryRetry() {
+    long cur;
+    do {
+      cur = budget.get();
+      if (cur < UNIT) {
+        budgetExhausted.increment();
+        return false;
+      }
+    } while (!budget.compareAndSet(cur, cur - UNIT));
+    retries.increment();
+    return true;
+  }
+
+  // Exponential backoff with jitter; Retry-After (seconds) wins when the server sends it
+  long delayMs(int attempt, String retryAfter) {
+    if (retryAfter != null) {
+      try {
+        return Math.min(maxBackoff, Long.parseLong(retryAfter.trim()) * 1000);
+      } catch (NumberFormatException ignored) {
+        // HTTP-date form is not worth parsing here
+      }
+    }
+    long delay = Math.min(maxBackoff, backoff << Math.min(attempt - 1, 20));
+    return (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+  }
+
+  Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("calls", calls.sum());
+    stats.put("retries", retries.sum());
+    stats.put("budgetExhausted", budgetExhausted.sum());
+    stats.put("budget", budget.get() / UNIT);
+    if (breaker != null) {
+      stats.put("breaker", breaker.getStats());
+    }
+    RateLimiter current = limiter;
+    if (current != null) {
+      stats.put("limit", current.getStats());
+    }
+    return stats;
+  }
+}
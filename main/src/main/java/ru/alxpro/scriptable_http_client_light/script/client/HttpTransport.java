@@ -0,0 +1,330 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import static ru.alxpro.scriptable_http_client_light.utils.ScriptLoader.SCRIPT_KEY;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.apache.connector.ApacheHttpClientBuilderConfigurator;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import ru.alxpro.scriptable_http_client_light.script.AppConfig;
+import ru.alxpro.scriptable_http_client_light.script.SharedContext;
+import ru.alxpro.scriptable_http_client_light.utils.ByteBufferPool;
+import ru.alxpro.scriptable_http_client_light.Main;
+import ru.alxpro.scriptable_http_client_light.utils.CompressionFilter;
+import ru.alxpro.scriptable_http_client_light.utils.HarRecorder;
+import ru.alxpro.scriptable_http_client_light.utils.HttpCacheFilter;
+import ru.alxpro.scriptable_http_client_light.utils.MetricsRegistry;
+import ru.alxpro.scriptable_http_client_light.utils.Slf4jLogFilter;
+import ru.alxpro.scriptable_http_client_light.utils.VirtualThreads;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HttpTransport {
+
+  private static final Logger log = LoggerFactory.getLogger(HttpTransport.class);
+  public static final String POOLED = "pooled";
+  public static final String HTTP2 = "http2";
+  // JVM-wide and read once, when java.net.http initializes
+  private static final String JDK_NO_HOSTNAME_CHECK =
+      "jdk.internal.httpclient.disableHostnameVerification";
+  private final AppConfig config;
+  private final String name;
+  private final TlsContext tls;
+  // Null on the http2 transport
+  private final ConnectionPool pool;
+  private final AsyncDispatcher dispatcher;
+  private final ByteBufferPool bufferPool;
+  private final CompressionFilter compression;
+  private final HttpCacheFilter cache;
+  private final Slf4jLogFilter logFilter;
+  private final HarRecorder har;
+  private final MetricsRegistry metrics;
+  private final HttpClient jdkClient;
+  private final boolean h2c;
+  private final Map<String, LongAdder> versions = JdkHttpConnector.newVersionStats();
+  private final Map<String, HostPolicy> policies = new ConcurrentHashMap<>();
+
+  public HttpTransport(AppConfig config, SharedContext context) {
+    this.config = config;
+    this.tls = new TlsContext(config);
+    String type = config.get(AppConfig.TRANSPORT, POOLED).trim().toLowerCase();
+    if (!POOLED.equals(type) && !HTTP2.equals(type)) {
+      log.warn("Unknown transport '{}', using '{}'", type, POOLED);
+      type = POOLED;
+    }
+    this.name = type;
+    // Its evictor thread is of no use to java.net.http
+    this.pool = POOLED.equals(type) ? new ConnectionPool(config, tls) : null;
+    this.dispatcher = new AsyncDispatcher(config.getInt(AppConfig.ASYNC_MAX_IN_FLIGHT, 64),
+        VirtualThreads.resolve(
+            Boolean.parseBoolean(config.get(AppConfig.THREADS_VIRTUAL, "false")), "Async"));
+    if (Boolean.parseBoolean(config.get(AppConfig.RESPONSE_DIRECT_BUFFERS, "false"))) {
+      this.bufferPool = new ByteBufferPool(
+          config.getInt(AppConfig.RESPONSE_POOL_MAX_SIZE, 1 << 20),
+          config.getInt(AppConfig.RESPONSE_POOL_PER_CLASS, 32));
+    } else {
+      this.bufferPool = null;
+    }
+    boolean decode = Boolean.parseBoolean(config.get(AppConfig.COMPRESSION_RESPONSE, "false"));
+    String encode = config.get(AppConfig.COMPRESSION_REQUEST, "none");
+    if (decode || !"none".equalsIgnoreCase(encode)) {
+      this.compression = new CompressionFilter(
+          decode, encode, config.getInt(AppConfig.COMPRESSION_MIN_SIZE, 1024));
+    } else {
+      this.compression = null;
+    }
+    if (Boolean.parseBoolean(config.get(AppConfig.CACHE_ENABLED, "false"))) {
+      File diskDir = Boolean.parseBoolean(config.get(AppConfig.CACHE_DISK, "false"))
+          ? new File(Main.getDataDir(), "http-cache") : null;
+      this.cache = new HttpCacheFilter(
+          config.getLong(AppConfig.CACHE_MAX_BYTES, 32L << 20),
+          config.getLong(AppConfig.CACHE_MAX_ENTRY_SIZE, 1 << 20),
+          diskDir, config.getLong(AppConfig.CACHE_DISK_MAX_BYTES, 256L << 20));
+    } else {
+      this.cache = null;
+    }
+    // Shared, so log.maxPerSecond holds across all clients
+    this.logFilter = new Slf4jLogFilter(
+        config.getInt(AppConfig.MAX_BODY_LOG_SIZE, 1024),
+        config.getInt(AppConfig.LOG_MAX_PER_SECOND, 0));
+    if (Boolean.parseBoolean(config.get(AppConfig.HAR_ENABLED, "false"))) {
+      this.har = new HarRecorder(() -> context.get(SCRIPT_KEY),
+          Boolean.parseBoolean(config.get(AppConfig.HAR_BODIES, "false")),
+          config.getInt(AppConfig.HAR_MAX_BODY_SIZE, 65536),
+          config.getInt(AppConfig.HAR_QUEUE_SIZE, 1000));
+    } else {
+      this.har = null;
+    }
+    this.metrics = new MetricsRegistry(config.getInt(AppConfig.METRICS_MAX_ENDPOINTS, 500));
+    this.h2c = Boolean.parseBoolean(config.get(AppConfig.TRANSPORT_H2C, "true"));
+    this.jdkClient = HTTP2.equals(type) ? newJdkClient() : null;
+    registerGauges();
+    log.info("HTTP transport: {}", name);
+  }
+
+  private void registerGauges() {
+    metrics.gauge("async_in_flight", "Async requests submitted and not yet completed",
+        dispatcher::getInFlight);
+    if (jdkClient != null) {
+      return;
+    }
+    PoolingHttpClientConnectionManager manager = pool.getManager();
+    metrics.gauge("pool_leased", "Pooled connections in use",
+        () -> manager.getTotalStats().getLeased());
+    metrics.gauge("pool_available", "Idle pooled connections",
+        () -> manager.getTotalStats().getAvailable());
+    metrics.gauge("pool_pending", "Requests waiting for a pooled connection",
+        () -> manager.getTotalStats().getPending());
+    metrics.gauge("pool_max", "Pool capacity", () -> manager.getTotalStats().getMax());
+  }
+
+  // java.net.http has no per-client hostname verifier, only a JVM-wide switch that takes
+  // effect if set before its first use. Main calls this at startup, before any transport
+  // exists, so tls.verifyHostname=false of the startup config applies to the http2 transport
+  // and to every other java.net.http client of the process; later configs (agent jobs)
+  // can't change it
+  public static void setupJdkHostnameVerification(AppConfig config) {
+    String type = config.get(AppConfig.TRANSPORT, POOLED).trim().toLowerCase();
+    if (HTTP2.equals(type) && !TlsContext.verifiesHostname(config)
+        && System.getProperty(JDK_NO_HOSTNAME_CHECK) == null) {
+      System.setProperty(JDK_NO_HOSTNAME_CHECK, "true");
+      log.warn("Hostname verification is off for all java.net.http clients of this process");
+    }
+  }
+
+  private HttpClient newJdkClient() {
+    boolean noVerify = tls.getHostnameVerifier() == NoopHostnameVerifier.INSTANCE;
+    if (noVerify && !Boolean.getBoolean(JDK_NO_HOSTNAME_CHECK)) {
+      log.warn("tls.verifyHostname=false is not applied to the http2 transport, "
+          + "it takes effect only in the config the process started with");
+    }
+    return HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .sslContext(tls.getSslContext())
+        .sslParameters(tls.getSslParameters())
+        .build();
+  }
+
+  public AppConfig getConfig() {
+    return config;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public SSLContext getSslContext() {
+    return tls.getSslContext();
+  }
+
+  public HostnameVerifier getHostnameVerifier() {
+    return tls.getHostnameVerifier();
+  }
+
+  public TlsContext getTls() {
+    return tls;
+  }
+
+  public ConnectionPool getPool() {
+    return pool;
+  }
+
+  public AsyncDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  // Null unless response.directBuffers=true
+  public ByteBufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  // Null unless compression is enabled
+  public CompressionFilter getCompression() {
+    return compression;
+  }
+
+  public Slf4jLogFilter getLogFilter() {
+    return logFilter;
+  }
+
+  public MetricsRegistry getMetrics() {
+    return metrics;
+  }
+
+  // Null unless har.enabled=true
+  public HarRecorder getHar() {
+    return har;
+  }
+
+  // Null unless cache.enabled=true
+  public HttpCacheFilter getCache() {
+    return cache;
+  }
+
+  HostPolicy policyFor(String host) {
+    return policies.computeIfAbsent(host, h -> new HostPolicy(config, h));
+  }
+
+  // Policies are built from config on first use of a host, so a reload needs a reset
+  public void resetPolicies() {
+    policies.clear();
+  }
+
+  // Overrides limit.rps/limit.burst of the host until the next reload
+  public void setLimit(String host, double rps, int burst) {
+    policyFor(host.toLowerCase()).setLimit(rps, burst);
+  }
+
+  public Map<String, Object> getPolicyStats() {
+    Map<String, Object> stats = new TreeMap<>();
+    policies.forEach((host, policy) -> stats.put(host, policy.getStats()));
+    return stats;
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("transport", name);
+    if (jdkClient != null) {
+      Map<String, Long> byVersion = new LinkedHashMap<>();
+      versions.forEach((k, v) -> byVersion.put(k, v.sum()));
+      stats.put("versions", byVersion);
+    } else {
+      stats.putAll(pool.getStats());
+    }
+    stats.put("asyncInFlight", dispatcher.getInFlight());
+    stats.put("tls", tls.getStats());
+    if (compression != null) {
+      stats.put("compression", compression.getStats().toMap());
+    }
+    if (cache != null) {
+      stats.put("cache", cache.getStats());
+    }
+    if (har != null) {
+      stats.put("har", har.getStats());
+    }
+    return stats;
+  }
+
+  ClientConfig newClientConfig() {
+    if (jdkClient != null) {
+      // One HttpClient for all clients: requests to a host share one h2 connection
+      return new ClientConfig()
+          .connectorProvider((client, cfg) -> new JdkHttpConnector(jdkClient, h2c, versions));
+    }
+    // Shared manager: every client leases connections from the same pool
+    return new ClientConfig()
+        .connectorProvider(new ApacheConnectorProvider())
+        .property(ApacheClientProperties.CONNECTION_MANAGER, pool.getManager())
+        .property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, true)
+        .property(ApacheClientProperties.DISABLE_COOKIES, true)
+        .register(new ApacheBuilderConfigurator())
+        .property(ClientProperties.REQUEST_ENTITY_PROCESSING,
+            RequestEntityProcessing.BUFFERED);
+  }
+
+  public void close() {
+    if (har != null) {
+      har.close();
+    }
+    dispatcher.close();
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  private static class ApacheBuilderConfigurator implements ApacheHttpClientBuilderConfigurator {
+
+    @Override
+    public HttpClientBuilder configure(HttpClientBuilder builder) {
+      // Content coding is handled by CompressionFilter for every transport
+      return builder
+          .disableContentCompression()
+          .setRequestExecutor(new TimedRequestExecutor());
+    }
+  }
+
+  // Send and time-to-first-byte phases for RequestTimer
+  private static class TimedRequestExecutor extends HttpRequestExecutor {
+
+    @Override
+    protected HttpResponse doSendRequest(
+        HttpRequest request, HttpClientConnection conn, HttpContext context)
+        throws IOException, HttpException {
+      RequestTimer.sendStarted(true);
+      HttpResponse response = super.doSendRequest(request, conn, context);
+      RequestTimer.requestSent();
+      return response;
+    }
+
+    @Override
+    protected HttpResponse doReceiveResponse(
+        HttpRequest request, HttpClientConnection conn, HttpContext context)
+        throws IOException, HttpException {
+      HttpResponse response = super.doReceiveResponse(request, conn, context);
+      RequestTimer.firstByte(response.getStatusLine().getProtocolVersion().toString());
+      return response;
+    }
+  }
+}
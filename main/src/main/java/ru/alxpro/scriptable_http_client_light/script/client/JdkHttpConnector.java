@@ -0,0 +1,117 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import jakarta.ws.rs.ProcessingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Jersey connector over one shared java.net.http.HttpClient (HTTP/2 multiplexing)
+class JdkHttpConnector implements Connector {
+
+  private static final Logger log = LoggerFactory.getLogger(JdkHttpConnector.class);
+  // Set by java.net.http itself, not allowed on a request; JDK 11 also rejects the last four
+  private static final Set<String> RESTRICTED = Set.of(
+      "connection", "content-length", "expect", "host", "upgrade",
+      "date", "from", "via", "warning"
+  );
+  private final HttpClient client;
+  private final boolean h2c;
+  private final Map<String, LongAdder> versions;
+
+  JdkHttpConnector(HttpClient client, boolean h2c, Map<String, LongAdder> versions) {
+    this.client = client;
+    this.h2c = h2c;
+    this.versions = versions;
+  }
+
+  static Map<String, LongAdder> newVersionStats() {
+    return new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public ClientResponse apply(ClientRequest request) {
+    try {
+      HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri());
+      HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.noBody();
+      if (request.hasEntity()) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.setStreamProvider(contentLength -> out);
+        request.writeEntity();
+        publisher = HttpRequest.BodyPublishers.ofByteArray(out.toByteArray());
+      }
+      request.getStringHeaders().forEach((key, values) -> {
+        if (!RESTRICTED.contains(key.toLowerCase())) {
+          try {
+            values.forEach(value -> builder.header(key, value));
+          } catch (IllegalArgumentException e) {
+            // Restricted on this JDK or an invalid value: the request goes without it
+            log.warn("Header {} skipped: {}", key, e.getMessage());
+          }
+        }
+      });
+      if (!h2c && "http".equalsIgnoreCase(request.getUri().getScheme())) {
+        builder.version(HttpClient.Version.HTTP_1_1);
+      }
+      builder.method(request.getMethod(), publisher);
+
+      // Connection phases are internal to java.net.http, only the exchange is timed
+      RequestTimer.sendStarted(false);
+      HttpResponse<InputStream> rsp = client.send(
+          builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+      RequestTimer.firstByte(
+          rsp.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1");
+      versions.computeIfAbsent(rsp.version().name(), k -> new LongAdder()).increment();
+
+      ClientResponse response = new ClientResponse(Statuses.from(rsp.statusCode()), request);
+      rsp.headers().map().forEach((key, values) -> {
+        if (!key.startsWith(":")) {
+          values.forEach(value -> response.getHeaders().add(key, value));
+        }
+      });
+      response.setEntityStream(rsp.body());
+      return response;
+    } catch (IOException e) {
+      throw new ProcessingException(e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessingException("Request interrupted", e);
+    }
+  }
+
+  @Override
+  public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+    return CompletableFuture.runAsync(() -> {
+      try {
+        callback.response(apply(request));
+      } catch (Throwable e) {
+        callback.failure(e);
+      }
+    });
+  }
+
+  @Override
+  public String getName() {
+    return "java.net.http " + client.version();
+  }
+
+  @Override
+  public void close() {
+    // Shared client is owned by HttpTransport
+  }
+}
@@ -0,0 +1,59 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Token bucket in its GCRA form: a single "theoretical arrival time" instead of a token
+// count, so reserving a slot is one CAS and callers learn how long to wait up front
+class RateLimiter {
+
+  private final double rps;
+  private final int burst;
+  private final long interval;
+  private final long tolerance;
+  private final AtomicLong tat = new AtomicLong(System.nanoTime());
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private final LongAdder throttledNanos = new LongAdder();
+
+  RateLimiter(double rps, int burst) {
+    this.rps = rps;
+    this.burst = Math.max(1, burst);
+    this.interval = (long) (1_000_000_000L / rps);
+    this.tolerance = interval * this.burst;
+  }
+
+  // Takes one token and returns the nanos to wait before sending
+  long reserve() {
+    return reserve(System.nanoTime());
+  }
+
+  long reserve(long now) {
+    long prev;
+    long next;
+    do {
+      prev = tat.get();
+      // An idle bucket restarts full at now, never more than burst slots in the past
+      next = Math.max(prev, now) + interval;
+    } while (!tat.compareAndSet(prev, next));
+    long wait = Math.max(0, next - tolerance - now);
+    requests.increment();
+    if (wait > 0) {
+      throttled.increment();
+      throttledNanos.add(wait);
+    }
+    return wait;
+  }
+
+  Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("rps", rps);
+    stats.put("burst", burst);
+    stats.put("requests", requests.sum());
+    stats.put("throttled", throttled.sum());
+    stats.put("throttledMs", throttledNanos.sum() / 1_000_000);
+    return stats;
+  }
+}
@@ -0,0 +1,143 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import ru.alxpro.scriptable_http_client_light.script.JTimings;
+import ru.alxpro.scriptable_http_client_light.utils.MetricsRegistry;
+
+// Phase timestamps of the request running on this thread. Jersey runs the connector
+// on the calling thread, so the DNS resolver, socket factories and request executor
+// of the pooled transport can report into it without any request id
+public class RequestTimer {
+
+  private static final ThreadLocal<RequestTimer> CURRENT = new ThreadLocal<>();
+  private final long start;
+  private long dns;
+  private long connect;
+  private long tls;
+  private boolean connected;
+  private boolean observed;
+  private long sendStart;
+  private long sent;
+  private long firstByte;
+  private long done;
+  // Of the last response, e.g. HTTP/1.1 or HTTP/2; null until the status line arrives
+  private String protocol;
+  // Set by BaseClient: where the request is recorded and its final status, 0 = exception
+  MetricsRegistry.Endpoint endpoint;
+  int status;
+
+  private RequestTimer(long start) {
+    this.start = start;
+  }
+
+  static RequestTimer start(long startNanos) {
+    RequestTimer timer = new RequestTimer(startNanos);
+    CURRENT.set(timer);
+    return timer;
+  }
+
+  // Null outside of a BaseClient request
+  public static RequestTimer current() {
+    return CURRENT.get();
+  }
+
+  static void clear() {
+    CURRENT.remove();
+  }
+
+  // A retried request keeps its start, the phases are those of the last attempt
+  void newAttempt() {
+    dns = 0;
+    connect = 0;
+    tls = 0;
+    connected = false;
+    observed = false;
+    sendStart = 0;
+    sent = 0;
+    firstByte = 0;
+    done = 0;
+    protocol = null;
+  }
+
+  static void recordDns(long nanos) {
+    RequestTimer t = CURRENT.get();
+    if (t != null) {
+      t.dns += nanos;
+    }
+  }
+
+  static void recordConnect(long nanos) {
+    RequestTimer t = CURRENT.get();
+    if (t != null) {
+      t.connect += nanos;
+      t.connected = true;
+    }
+  }
+
+  static void recordTls(long nanos) {
+    RequestTimer t = CURRENT.get();
+    if (t != null) {
+      t.tls += nanos;
+    }
+  }
+
+  // observed: the transport reports connection phases (pooled), so "no connect" means reuse
+  static void sendStarted(boolean observed) {
+    RequestTimer t = CURRENT.get();
+    if (t != null) {
+      t.sendStart = System.nanoTime();
+      t.observed = observed;
+    }
+  }
+
+  static void requestSent() {
+    RequestTimer t = CURRENT.get();
+    if (t != null) {
+      t.sent = System.nanoTime();
+    }
+  }
+
+  static void firstByte(String protocol) {
+    RequestTimer t = CURRENT.get();
+    if (t != null) {
+      t.firstByte = System.nanoTime();
+      t.protocol = protocol;
+    }
+  }
+
+  public String getProtocol() {
+    return protocol;
+  }
+
+  void done() {
+    done = System.nanoTime();
+  }
+
+  long elapsedNanos() {
+    return (done != 0 ? done : System.nanoTime()) - start;
+  }
+
+  private static double ms(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  // Connect time excludes the TLS handshake reported separately
+  public JTimings toTimings() {
+    long end = done != 0 ? done : System.nanoTime();
+    double total = ms(end - start);
+    if (sendStart == 0) {
+      // Never reached the wire (cache hit, abort)
+      return new JTimings(total, -1, -1, -1, -1, -1, -1, total, null);
+    }
+    long setup = observed ? dns + connect : 0;
+    double queued = ms(sendStart - start - setup);
+    double dnsMs = observed ? ms(dns) : -1;
+    double connectMs = observed ? ms(connect - tls) : -1;
+    double tlsMs = observed ? ms(tls) : -1;
+    double sentMs = sent != 0 ? ms(sent - sendStart) : -1;
+    long headers = firstByte != 0 ? firstByte : end;
+    double ttfb = ms(headers - (sent != 0 ? sent : sendStart));
+    double download = ms(end - headers);
+    return new JTimings(queued, dnsMs, connectMs, tlsMs, sentMs, ttfb, download, total,
+        observed ? !connected : null);
+  }
+}
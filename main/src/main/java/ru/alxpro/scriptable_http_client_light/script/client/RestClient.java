@@ -1,18 +1,64 @@
 package ru.alxpro.scriptable_http_client_light.script.client;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static ru.alxpro.scriptable_http_client_light.utils.ScriptLoader.SCRIPT_KEY;
 
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.core.Response;
+import java.io.File;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
 import ru.alxpro.scriptable_http_client_light.script.AppConfig;
+import ru.alxpro.scriptable_http_client_light.script.JBatchResult;
+import ru.alxpro.scriptable_http_client_light.script.JDownload;
+import ru.alxpro.scriptable_http_client_light.script.JFuture;
 import ru.alxpro.scriptable_http_client_light.script.JResponse;
+import ru.alxpro.scriptable_http_client_light.script.SharedContext;
+import ru.alxpro.scriptable_http_client_light.utils.FileUtils;
+import ru.alxpro.scriptable_http_client_light.utils.HttpCacheFilter;
+import ru.alxpro.scriptable_http_client_light.utils.JfrEvents;
+import ru.alxpro.scriptable_http_client_light.utils.Slf4jLogFilter;
 
 public class RestClient extends BaseClient {
 
-  public RestClient(AppConfig config) {
-    super(config);
+  private final SharedContext context;
+
+  public RestClient(AppConfig config, HttpTransport transport, SharedContext context) {
+    super(config, transport);
+    this.context = context;
+  }
+
+  public Map<String, Object> poolStats() {
+    return transport.getStats();
+  }
+
+  // Empty map when cache.enabled=false
+  public Map<String, Object> cacheStats() {
+    HttpCacheFilter cache = transport.getCache();
+    return cache != null ? cache.getStats() : new LinkedHashMap<>();
+  }
+
+  public void cacheClear() {
+    if (transport.getCache() != null) {
+      transport.getCache().clear();
+    }
+  }
+
+  // JS: http.limit("api.local", 10, 5) - 10 requests/s with bursts of 5, rps 0 = no limit
+  public void limit(String host, double rps, int burst) {
+    transport.setLimit(host, rps, burst);
+  }
+
+  // Retry, breaker and rate limit counters per host
+  public Map<String, Object> hostStats() {
+    return transport.getPolicyStats();
   }
 
   public JResponse get(String url) {
@@ -31,9 +77,162 @@ public class RestClient extends BaseClient {
     return request("POST", url, body, null, token);
   }
 
+  public JFuture<JResponse> getAsync(String url) {
+    return requestAsync("GET", url, null, null, null);
+  }
+
+  public JFuture<JResponse> postAsync(String url, String body) {
+    return requestAsync("POST", url, body, null, null);
+  }
+
+  public JFuture<JResponse> getWithTokenAsync(String url, String token) {
+    return requestAsync("GET", url, null, null, token);
+  }
+
+  public JFuture<JResponse> postWithTokenAsync(String url, String body, String token) {
+    return requestAsync("POST", url, body, null, token);
+  }
+
+  public JFuture<JResponse> requestAsync(
+      String method, String url, String body, Map<String, String> headers, String token
+  ) {
+    // Rate limit wait is taken on the dispatcher timer, not on a worker thread
+    long submitted = System.nanoTime();
+    return transport.getDispatcher().submit(context.propagate(
+        () -> request(method, url, body, headers, token, submitted)), reserve(url));
+  }
+
+  public JBatchResult batch(List<Map<String, Object>> requests) {
+    return batch(requests, null);
+  }
+
+  // JS: http.batch([{method: "GET", url: u1}, {url: u2, token: t}], {concurrency: 4})
+  public JBatchResult batch(List<Map<String, Object>> requests, Map<String, Object> options) {
+    int concurrency = requests.size();
+    if (options != null && options.get("concurrency") instanceof Number) {
+      concurrency = ((Number) options.get("concurrency")).intValue();
+    }
+    Semaphore slots = new Semaphore(Math.max(1, concurrency));
+    long start = System.nanoTime();
+    List<JFuture<JBatchResult.Item>> futures = new ArrayList<>();
+    for (int i = 0; i < requests.size(); i++) {
+      int index = i;
+      Map<String, Object> req = requests.get(i);
+      try {
+        slots.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Batch interrupted", e);
+      }
+      futures.add(transport.getDispatcher().submit(context.propagate(() -> {
+        try {
+          return batchItem(index, req);
+        } finally {
+          slots.release();
+        }
+      })));
+    }
+    List<JBatchResult.Item> items = new ArrayList<>();
+    futures.forEach(f -> items.add(f.join()));
+    return new JBatchResult(items, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private JBatchResult.Item batchItem(int index, Map<String, Object> req) {
+    long start = System.nanoTime();
+    try {
+      String method = req.get("method") != null ? req.get("method").toString() : "GET";
+      Object url = req.get("url");
+      if (url == null) {
+        throw new IllegalArgumentException("Batch request " + index + " has no url");
+      }
+      Object body = req.get("body");
+      Object token = req.get("token");
+      Map<String, String> headers = null;
+      if (req.get("headers") instanceof Map) {
+        headers = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> h : ((Map<?, ?>) req.get("headers")).entrySet()) {
+          headers.put(String.valueOf(h.getKey()), String.valueOf(h.getValue()));
+        }
+      }
+      JResponse response = request(
+          method.toUpperCase(), url.toString(), body != null ? body.toString() : null,
+          headers, token != null ? token.toString() : null
+      );
+      return new JBatchResult.Item(index, response, null, elapsedMs(start));
+    } catch (Exception e) {
+      return new JBatchResult.Item(index, null, e.getMessage(), elapsedMs(start));
+    }
+  }
+
+  private static long elapsedMs(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+
+  public JDownload download(String url, String name) {
+    return download(url, name, null, null);
+  }
+
+  public JDownload download(String url, String name, Map<String, String> headers) {
+    return download(url, name, headers, null);
+  }
+
+  // Streams the body into data/<SCRIPT_KEY>/<name>, only the digest is kept
+  public JDownload download(
+      String url, String name, Map<String, String> headers, String token
+  ) {
+    try {
+      File target = FileUtils.resolveDataDirTarget(context.get(SCRIPT_KEY), name);
+      Invocation.Builder builder = httpClient.target(url).request()
+          .property(Slf4jLogFilter.SKIP_BODY, true);
+      if (token != null) {
+        builder.header("Authorization", "Bearer " + token);
+      }
+      if (headers != null) {
+        headers.forEach(builder::header);
+      }
+      try (Response response = execute("GET", url, builder::get)) {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        long bytes = 0;
+        if (response.hasEntity()) {
+          try (InputStream in = response.readEntity(InputStream.class)) {
+            bytes = FileUtils.transferTo(new DigestInputStream(in, md), target);
+          }
+        }
+        finishTimer();
+        Map<String, String> rspHeaders = new LinkedHashMap<>();
+        response.getStringHeaders().forEach((k, v) -> rspHeaders.put(k, String.join(", ", v)));
+        return new JDownload(
+            response.getStatus(), FileUtils.relativeToDataDir(target),
+            bytes, "sha256:" + toHex(md.digest()), rspHeaders
+        );
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("HTTP Download failed: " + e.getMessage(), e);
+    } finally {
+      failTimer();
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
   public JResponse request(
       String method, String url, String body, Map<String, String> headers, String token
   ) {
+    return request(method, url, body, headers, token, 0);
+  }
+
+  private JResponse request(
+      String method, String url, String body, Map<String, String> headers, String token,
+      long queuedSince
+  ) {
+    JfrEvents.HttpExchange event = new JfrEvents.HttpExchange();
+    event.begin();
     try {
       Invocation.Builder builder = httpClient.target(url).request(APPLICATION_JSON_TYPE);
       if (token != null) {
@@ -42,15 +241,24 @@ public class RestClient extends BaseClient {
       if (headers != null) {
         headers.forEach(builder::header);
       }
-      Entity<String> entity = null;
-      if (body != null) {
-        entity = Entity.json(body);
-      }
-      try (Response response = builder.build(method, entity).invoke()) {
-        return new JResponse(response.getStatus(), response.readEntity(String.class));
+      Entity<String> entity = body != null ? Entity.json(body) : null;
+      try (Response response = execute(
+          method, url, null, () -> builder.build(method, entity).invoke(), queuedSince)) {
+        JResponse result = toJResponse(response);
+        event.status = result.status;
+        event.bytes = result.getLength();
+        return result;
       }
     } catch (Exception e) {
       throw new RuntimeException("HTTP Request failed: " + e.getMessage(), e);
+    } finally {
+      failTimer();
+      event.end();
+      if (event.shouldCommit()) {
+        event.method = method;
+        event.url = url;
+        event.commit();
+      }
     }
   }
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import java.io.ByteArrayOutputStream;
 import java.util.Map;
 import ru.alxpro.scriptable_http_client_light.script.AppConfig;
 import ru.alxpro.scriptable_http_client_light.script.Utils;
+import ru.alxpro.scriptable_http_client_light.utils.JfrEvents;
 import ru.alxpro.scriptable_http_client_light.utils.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,8 +33,8 @@ public class SoapClient extends BaseClient {
   private String username;
   private String password;
 
-  public SoapClient(AppConfig config, Utils utils) {
-    super(config);
+  public SoapClient(AppConfig config, HttpTransport transport, Utils utils) {
+    super(config, transport);
     this.utils = utils;
   }
 
@@ -73,6 +74,8 @@ public class SoapClient extends BaseClient {
       String url, String action, String operation, Map<String, Object> params,
       Map<String, String> namespaces
   ) {
+    JfrEvents.SoapCall event = new JfrEvents.SoapCall();
+    event.begin();
     try {
       MessageFactory mf = MessageFactory.newInstance();
       SOAPFactory sf = SOAPFactory.newInstance();
@@ -136,18 +139,22 @@ public class SoapClient extends BaseClient {
         request.header("Authorization", "Basic " + utils.toBase64(auth));
       }
 
-      try (Response response = request.post(Entity.entity(requestBody, "text/xml"))) {
-        String rawRespBody = response.readEntity(String.class);
+      Entity<String> entity = Entity.entity(requestBody, "text/xml");
+      try (Response response = execute("POST", url, operation, () -> request.post(entity))) {
+        // Raw bytes go to the SOAP parser as is, it honors the declared encoding
+        byte[] bytes = response.hasEntity() ? response.readEntity(byte[].class) : new byte[0];
+        finishTimer();
+        event.status = response.getStatus();
         String cType = response.getHeaderString("Content-Type");
         boolean isXml = cType != null && cType.toLowerCase().contains("text/xml");
 
         if (!isXml && response.getStatus() != 200) {
+          String rawRespBody = new String(bytes, UTF_8);
           log.error("Invalid Content-Type: {}. Body: {}", cType, rawRespBody);
           throw new RuntimeException("Server Error (" + cType + "): " + rawRespBody);
         }
 
         try {
-          byte[] bytes = rawRespBody.getBytes(UTF_8);
           MimeHeaders headers = new MimeHeaders();
           if (cType != null) {
             headers.addHeader("Content-Type", cType);
@@ -157,6 +164,7 @@ public class SoapClient extends BaseClient {
           SOAPBody respSoapBody = responseMsg.getSOAPBody();
           if (respSoapBody.hasFault()) {
             SOAPFault fault = respSoapBody.getFault();
+            event.fault = true;
             throw new RuntimeException("SOAP Fault: " + fault.getFaultString());
           }
 
@@ -166,12 +174,20 @@ public class SoapClient extends BaseClient {
           }
           return child;
         } catch (Exception e) {
-          log.error("Failed to parse SOAP response: {}", rawRespBody);
+          log.error("Failed to parse SOAP response: {}", new String(bytes, UTF_8));
           throw new RuntimeException("SOAP Parse Error", e);
         }
       }
     } catch (Exception e) {
       throw new RuntimeException("SOAP Failed: " + e.getMessage(), e);
+    } finally {
+      failTimer();
+      event.end();
+      if (event.shouldCommit()) {
+        event.url = url;
+        event.operation = operation;
+        event.commit();
+      }
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ssl.DefaultHostnameVerifier;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import ru.alxpro.scriptable_http_client_light.script.AppConfig;
+import ru.alxpro.scriptable_http_client_light.utils.HttpUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// One SSLContext for every client, so the session cache is shared and reconnects resume
+public class TlsContext {
+
+  private static final Logger log = LoggerFactory.getLogger(TlsContext.class);
+  private final SSLContext sslContext;
+  private final HostnameVerifier hostnameVerifier;
+  private final String[] protocols;
+  private final String[] alpn;
+  private final LongAdder handshakes = new LongAdder();
+  private final LongAdder resumed = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder handshakeNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  public TlsContext(AppConfig config) {
+    boolean trustAll = Boolean.parseBoolean(config.get(AppConfig.TLS_TRUST_ALL, "true"));
+    try {
+      TrustManager[] trustManagers = trustAll ? HttpUtils.getTrustAllManagers()
+          : trustManagers(config.get(AppConfig.TLS_TRUSTSTORE, ""),
+              config.get(AppConfig.TLS_TRUSTSTORE_PASSWORD, ""),
+              config.get(AppConfig.TLS_TRUSTSTORE_TYPE, "PKCS12"));
+      KeyManager[] keyManagers = keyManagers(config.get(AppConfig.TLS_KEYSTORE, ""),
+          config.get(AppConfig.TLS_KEYSTORE_PASSWORD, ""),
+          config.get(AppConfig.TLS_KEYSTORE_TYPE, "PKCS12"));
+      sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(keyManagers, trustManagers, new SecureRandom());
+    } catch (Exception e) {
+      throw new RuntimeException("TLS setup failed: " + e.getMessage(), e);
+    }
+    SSLSessionContext sessions = sslContext.getClientSessionContext();
+    sessions.setSessionCacheSize(config.getInt(AppConfig.TLS_SESSION_CACHE_SIZE, 1000));
+    sessions.setSessionTimeout(config.getInt(AppConfig.TLS_SESSION_TIMEOUT, 86400));
+
+    boolean verify = verifiesHostname(config);
+    hostnameVerifier = verify ? new DefaultHostnameVerifier() : NoopHostnameVerifier.INSTANCE;
+    protocols = split(config.get(AppConfig.TLS_PROTOCOLS, ""));
+    alpn = split(config.get(AppConfig.TLS_ALPN, ""));
+    log.info("TLS: trustAll={}, verifyHostname={}, sessionCache={}/{}s",
+        trustAll, verify, sessions.getSessionCacheSize(), sessions.getSessionTimeout());
+  }
+
+  // tls.verifyHostname, by default the opposite of tls.trustAll
+  public static boolean verifiesHostname(AppConfig config) {
+    boolean trustAll = Boolean.parseBoolean(config.get(AppConfig.TLS_TRUST_ALL, "true"));
+    return Boolean.parseBoolean(
+        config.get(AppConfig.TLS_VERIFY_HOSTNAME, String.valueOf(!trustAll)));
+  }
+
+  private static String[] split(String value) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    return value.replace(" ", "").split(",");
+  }
+
+  private static KeyStore load(String path, String password, String type) throws Exception {
+    KeyStore ks = KeyStore.getInstance(type);
+    try (var in = new FileInputStream(path)) {
+      ks.load(in, password.toCharArray());
+    }
+    return ks;
+  }
+
+  private static TrustManager[] trustManagers(String path, String password, String type)
+      throws Exception {
+    TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+        TrustManagerFactory.getDefaultAlgorithm());
+    // No truststore: JDK cacerts
+    tmf.init(path.isBlank() ? null : load(path, password, type));
+    return tmf.getTrustManagers();
+  }
+
+  private static KeyManager[] keyManagers(String path, String password, String type)
+      throws Exception {
+    if (path.isBlank()) {
+      return null;
+    }
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+        KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(load(path, password, type), password.toCharArray());
+    return kmf.getKeyManagers();
+  }
+
+  public SSLContext getSslContext() {
+    return sslContext;
+  }
+
+  public HostnameVerifier getHostnameVerifier() {
+    return hostnameVerifier;
+  }
+
+  // Protocols and ALPN for java.net.http, null keeps the JDK defaults
+  SSLParameters getSslParameters() {
+    SSLParameters params = sslContext.getDefaultSSLParameters();
+    if (protocols != null) {
+      params.setProtocols(protocols);
+    }
+    if (alpn != null) {
+      params.setApplicationProtocols(alpn);
+    }
+    return params;
+  }
+
+  // Socket factory of the pooled transport, times every handshake
+  SSLConnectionSocketFactory newSocketFactory() {
+    return new SSLConnectionSocketFactory(sslContext, protocols, null, hostnameVerifier) {
+      @Override
+      protected void prepareSocket(SSLSocket socket) {
+        if (alpn != null) {
+          SSLParameters params = socket.getSSLParameters();
+          params.setApplicationProtocols(alpn);
+          socket.setSSLParameters(params);
+        }
+      }
+
+      @Override
+      public Socket createLayeredSocket(
+          Socket socket, String target, int port, HttpContext context) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+          Socket ssl = super.createLayeredSocket(socket, target, port, context);
+          long nanos = System.nanoTime() - start;
+          record(nanos, ((SSLSocket) ssl).getSession(), startMillis);
+          RequestTimer.recordTls(nanos);
+          return ssl;
+        } catch (IOException e) {
+          failures.increment();
+          throw e;
+        }
+      }
+
+      // TCP connect plus the handshake of createLayeredSocket
+      @Override
+      public Socket connectSocket(
+          int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+          InetSocketAddress localAddress, HttpContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+          return super.connectSocket(
+              connectTimeout, socket, host, remoteAddress, localAddress, context);
+        } finally {
+          RequestTimer.recordConnect(System.nanoTime() - start);
+        }
+      }
+    };
+  }
+
+  // A resumed session keeps the creation time of the session it resumes
+  private void record(long nanos, SSLSession session, long startMillis) {
+    handshakes.increment();
+    handshakeNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+    if (session.getCreationTime() < startMillis) {
+      resumed.increment();
+    }
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    long count = handshakes.sum();
+    stats.put("handshakes", count);
+    stats.put("resumed", resumed.sum());
+    stats.put("failures", failures.sum());
+    stats.put("avgMs", count == 0 ? 0 : handshakeNanos.sum() / count / 1_000_000.0);
+    stats.put("maxMs", maxNanos.get() / 1_000_000.0);
+    stats.put("cachedSessions",
+        Collections.list(sslContext.getClientSessionContext().getIds()).size());
+    return stats;
+  }
+}
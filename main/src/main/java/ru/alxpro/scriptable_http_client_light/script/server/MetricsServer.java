@@ -0,0 +1,182 @@
+package ru.alxpro.scriptable_http_client_light.script.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import ru.alxpro.scriptable_http_client_light.utils.LatencyHistogram;
+import ru.alxpro.scriptable_http_client_light.utils.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// GET /metrics in OpenMetrics text format, for Prometheus scraping of long-running jobs.
+// Families are written straight from the live registry into the chunked response
+public class MetricsServer {
+
+  private static final Logger log = LoggerFactory.getLogger(MetricsServer.class);
+  private static final String CONTENT_TYPE =
+      "application/openmetrics-text; version=1.0.0; charset=utf-8";
+  private static final String PREFIX = "shc_";
+  // Histogram bucket bounds, seconds
+  private static final double[] LE = {
+      0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+  private static final long[] LE_MICROS = new long[LE.length];
+  private final MetricsRegistry metrics;
+  private HttpServer server;
+
+  static {
+    for (int i = 0; i < LE.length; i++) {
+      LE_MICROS[i] = (long) (LE[i] * 1_000_000);
+    }
+  }
+
+  public MetricsServer(MetricsRegistry metrics) {
+    this.metrics = metrics;
+  }
+
+  public void start(int port) {
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+      server.createContext("/metrics", this::handle);
+      server.start();
+      log.info("MetricsServer started on port {} (/metrics)", port);
+    } catch (Exception e) {
+      log.error("Failed to start MetricsServer: {}", e.getMessage());
+    }
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      log.info("MetricsServer stopped");
+      server = null;
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, 0);
+      try (Writer out = new BufferedWriter(
+          new OutputStreamWriter(exchange.getResponseBody(), UTF_8))) {
+        write(out);
+      }
+    } catch (IOException e) {
+      log.debug("Scrape aborted: {}", e.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  void write(Writer out) throws IOException {
+    writeRequests(out);
+    writeScripts(out);
+    family(out, "token_refreshes", "counter", "OAuth token requests by result");
+    sample(out, "token_refreshes_total", "result", "success", metrics.getTokenRefreshes());
+    sample(out, "token_refreshes_total", "result", "failure", metrics.getTokenFailures());
+    for (Map.Entry<String, MetricsRegistry.Gauge> e : metrics.gauges().entrySet()) {
+      family(out, e.getKey(), "gauge", e.getValue().help);
+      out.write(PREFIX + e.getKey() + " " + e.getValue().get() + "\n");
+    }
+    writeJvm(out);
+    out.write("# EOF\n");
+  }
+
+  private void writeRequests(Writer out) throws IOException {
+    family(out, "http_requests", "counter", "Client calls by endpoint and status (0 = error)");
+    for (MetricsRegistry.Endpoint e : metrics.endpoints()) {
+      String labels = "method=\"" + escape(e.method) + "\",endpoint=\""
+          + escape(e.template) + "\"";
+      for (Map.Entry<Integer, Long> s : e.getStatuses().entrySet()) {
+        out.write(PREFIX + "http_requests_total{" + labels + ",status=\"" + s.getKey() + "\"} "
+            + s.getValue() + "\n");
+      }
+    }
+    family(out, "http_request_duration_seconds", "histogram",
+        "Client call latency including retries and body download");
+    for (MetricsRegistry.Endpoint e : metrics.endpoints()) {
+      histogram(out, "http_request_duration_seconds", "method=\"" + escape(e.method)
+          + "\",endpoint=\"" + escape(e.template) + "\"", e.getLatency());
+    }
+  }
+
+  private void writeScripts(Writer out) throws IOException {
+    family(out, "script_duration_seconds", "histogram", "Script run duration");
+    for (MetricsRegistry.ScriptRuns r : metrics.scripts()) {
+      histogram(out, "script_duration_seconds",
+          "script=\"" + escape(r.name) + "\"", r.getDuration());
+    }
+    family(out, "script_failures", "counter", "Script runs that ended with an error");
+    for (MetricsRegistry.ScriptRuns r : metrics.scripts()) {
+      sample(out, "script_failures_total", "script", r.name, r.getFailures());
+    }
+  }
+
+  private static void writeJvm(Writer out) throws IOException {
+    var memory = ManagementFactory.getMemoryMXBean();
+    family(out, "jvm_memory_used_bytes", "gauge", "Used JVM memory");
+    MemoryUsage heap = memory.getHeapMemoryUsage();
+    MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+    sample(out, "jvm_memory_used_bytes", "area", "heap", heap.getUsed());
+    sample(out, "jvm_memory_used_bytes", "area", "nonheap", nonHeap.getUsed());
+    family(out, "jvm_memory_max_bytes", "gauge", "Max JVM memory (-1 = undefined)");
+    sample(out, "jvm_memory_max_bytes", "area", "heap", heap.getMax());
+    sample(out, "jvm_memory_max_bytes", "area", "nonheap", nonHeap.getMax());
+    family(out, "jvm_threads", "gauge", "Live JVM threads");
+    out.write(PREFIX + "jvm_threads " + ManagementFactory.getThreadMXBean().getThreadCount()
+        + "\n");
+    family(out, "jvm_gc_collections", "counter", "GC collections by collector");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      sample(out, "jvm_gc_collections_total", "gc", gc.getName(), gc.getCollectionCount());
+    }
+    family(out, "jvm_gc_collection_seconds", "counter", "GC time by collector");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      out.write(PREFIX + "jvm_gc_collection_seconds_total{gc=\"" + escape(gc.getName())
+          + "\"} " + gc.getCollectionTime() / 1000.0 + "\n");
+    }
+    family(out, "uptime_seconds", "gauge", "Time since JVM start");
+    out.write(PREFIX + "uptime_seconds "
+        + ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0 + "\n");
+  }
+
+  private static void histogram(Writer out, String name, String labels, LatencyHistogram h)
+      throws IOException {
+    long[] cumulative = h.countsAtOrBelow(LE_MICROS);
+    for (int i = 0; i < LE.length; i++) {
+      out.write(PREFIX + name + "_bucket{" + labels + ",le=\"" + LE[i] + "\"} "
+          + cumulative[i] + "\n");
+    }
+    long count = cumulative[LE.length];
+    out.write(PREFIX + name + "_bucket{" + labels + ",le=\"+Inf\"} " + count + "\n");
+    out.write(PREFIX + name + "_count{" + labels + "} " + count + "\n");
+    out.write(PREFIX + name + "_sum{" + labels + "} " + h.getSum() / 1e6 + "\n");
+  }
+
+  private static void family(Writer out, String name, String type, String help)
+      throws IOException {
+    out.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    out.write("# HELP " + PREFIX + name + " " + help + "\n");
+  }
+
+  private static void sample(Writer out, String name, String label, String value, long v)
+      throws IOException {
+    out.write(PREFIX + name + "{" + label + "=\"" + escape(value) + "\"} " + v + "\n");
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -5,7 +5,12 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -57,13 +62,23 @@ public class MockRestService {
   @GET
   @Path("/users")
   @Produces(MediaType.APPLICATION_JSON)
-  public String getUsers(@QueryParam("limit") Integer limit) {
+  public Response getUsers(@QueryParam("limit") Integer limit, @Context Request request) {
     List<User> result = new ArrayList<>(users);
     if (limit != null && limit > 0 && limit < result.size()) {
       result = result.subList(0, limit);
     }
     log.info("MockRestService: getUsers limit={}", limit);
-    return gson.toJson(result);
+    String json = gson.toJson(result);
+    // Validator for the client cache: 304 when If-None-Match matches
+    EntityTag etag = new EntityTag(Integer.toHexString(json.hashCode()));
+    CacheControl cc = new CacheControl();
+    cc.setNoCache(true);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+    if (notModified != null) {
+      // JDK HttpServer drops the connection after a 304, tell the client up front
+      return notModified.cacheControl(cc).header("Connection", "close").build();
+    }
+    return Response.ok(json).tag(etag).cacheControl(cc).build();
   }
 
   @GET
@@ -4,7 +4,10 @@ import com.sun.net.httpserver.HttpServer;
 import jakarta.ws.rs.core.UriBuilder;
 import java.net.URI;
 import org.glassfish.jersey.jdkhttp.JdkHttpServerFactory;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +21,8 @@ public class RestTestServer {
       URI baseUri = UriBuilder.fromUri("http://localhost/").port(port).build();
       ResourceConfig config = new ResourceConfig();
       config.register(MockRestService.class);
+      // Honors Accept-Encoding, so client compression can be checked locally
+      EncodingFilter.enableFor(config, GZipEncoder.class, DeflateEncoder.class);
       // false = не запускать сразу (хотя factory обычно запускает)
       server = JdkHttpServerFactory.createHttpServer(baseUri, config, false);
       server.start();
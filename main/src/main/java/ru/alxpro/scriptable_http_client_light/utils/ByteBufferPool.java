@@ -0,0 +1,88 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ByteBufferPool {
+
+  // Size classes are powers of two: 4 KiB .. 2^maxShift
+  private static final int MIN_SHIFT = 12;
+  private final int maxShift;
+  private final int perClass;
+  private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+  private final AtomicInteger[] counts;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public ByteBufferPool(int maxPooledSize, int perClass) {
+    int shift = MIN_SHIFT;
+    while ((1 << shift) < maxPooledSize && shift < 30) {
+      shift++;
+    }
+    this.maxShift = shift;
+    this.perClass = perClass;
+    int classes = maxShift - MIN_SHIFT + 1;
+    this.free = new ConcurrentLinkedQueue[classes];
+    this.counts = new AtomicInteger[classes];
+    for (int i = 0; i < classes; i++) {
+      free[i] = new ConcurrentLinkedQueue<>();
+      counts[i] = new AtomicInteger();
+    }
+  }
+
+  private int classOf(int size) {
+    int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1)));
+    return shift - MIN_SHIFT;
+  }
+
+  public ByteBuffer acquire(int size) {
+    int idx = classOf(size);
+    if (idx >= free.length) {
+      // Too big to keep around
+      return ByteBuffer.allocate(size);
+    }
+    ByteBuffer buf = free[idx].poll();
+    if (buf == null) {
+      return ByteBuffer.allocateDirect(1 << (idx + MIN_SHIFT));
+    }
+    counts[idx].decrementAndGet();
+    buf.clear();
+    return buf;
+  }
+
+  public void release(ByteBuffer buf) {
+    if (buf == null || !buf.isDirect()) {
+      return;
+    }
+    int idx = classOf(buf.capacity());
+    if (idx < free.length && counts[idx].incrementAndGet() <= perClass) {
+      free[idx].offer(buf);
+    } else if (idx < free.length) {
+      counts[idx].decrementAndGet();
+    }
+  }
+
+  // Reads the whole stream, returns a flipped buffer owned by the caller
+  public ByteBuffer read(InputStream in, int expected) throws IOException {
+    ByteBuffer buf = acquire(expected > 0 ? expected : 8192);
+    ReadableByteChannel ch = Channels.newChannel(in);
+    while (true) {
+      if (!buf.hasRemaining()) {
+        ByteBuffer bigger = acquire(buf.capacity() * 2);
+        buf.flip();
+        bigger.put(buf);
+        release(buf);
+        buf = bigger;
+      }
+      if (ch.read(buf) < 0) {
+        break;
+      }
+    }
+    buf.flip();
+    return buf;
+  }
+}
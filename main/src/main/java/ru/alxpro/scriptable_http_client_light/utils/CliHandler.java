@@ -11,6 +11,7 @@ import java.util.function.ToIntFunction;
 import ru.alxpro.scriptable_http_client_light.Main;
 import ru.alxpro.scriptable_http_client_light.script.AppConfig;
 import ru.alxpro.scriptable_http_client_light.script.SharedContext;
+import ru.alxpro.scriptable_http_client_light.script.client.HttpTransport;
 import org.jline.reader.Completer;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.LineReader;
@@ -29,20 +30,26 @@ public class CliHandler {
   private final ScriptLoader loader;
   private final AppConfig config;
   private final SharedContext context;
+  private final HttpTransport transport;
   private final String scriptsPath;
   private static final int DEFAULT_WIDTH = 120;
   private final Map<String, String> commandAliases = new HashMap<>();
 
   public CliHandler(
-      ScriptLoader loader, AppConfig config, SharedContext ctx, String scriptsPath
+      ScriptLoader loader, AppConfig config, SharedContext ctx,
+      HttpTransport transport, String scriptsPath
   ) {
     this.loader = loader;
     this.config = config;
     this.context = ctx;
+    this.transport = transport;
     this.scriptsPath = scriptsPath;
 
     registerCommand("list", "l");
     registerCommand("context", "c");
+    registerCommand("pool", "p");
+    registerCommand("breaker", "b");
+    registerCommand("stats", "s");
     registerCommand("reload", "r");
     registerCommand("exit", "e");
     registerCommand("help", "h");
@@ -59,6 +66,9 @@ public class CliHandler {
             + "\n [id] - start script"
             + "\n list    [l] - available scenarios"
             + "\n context [c] - current context"
+            + "\n pool    [p] - connection pool stats"
+            + "\n breaker [b] - retry, breaker and rate limit state per host"
+            + "\n stats   [s] - latency percentiles and status counts per endpoint"
             + "\n reload  [r] - reload"
             + "\n exit    [e] - exit from app"
             + "\n help    [h] - display help"
@@ -108,9 +118,19 @@ public class CliHandler {
             case "context":
               log.info("Current Context: {}", context.getAll());
               break;
+            case "pool":
+              log.info("Connection Pool: {}", transport.getStats());
+              break;
+            case "breaker":
+              log.info("Host Policies: {}", transport.getPolicyStats());
+              break;
+            case "stats":
+              log.info("Endpoint Stats:\n{}", transport.getMetrics().format());
+              break;
             case "reload":
               log.info("Forcing reload...");
               Main.loadConfig(config);
+              transport.resetPolicies();
               loader.loadAll(new java.io.File(scriptsPath));
               break;
             case "help":
@@ -120,6 +140,8 @@ public class CliHandler {
               ScriptLoader.ScriptEntry entry = loader.get(line);
               if (entry != null) {
                 startScript(line, entry);
+              } else if (loader.getError(line) != null) {
+                log.error("Script {} failed to load: {}", line, loader.getError(line));
               } else {
                 log.warn("Unknown command or script: {}", line);
               }
@@ -155,7 +177,7 @@ public class CliHandler {
     try {
       log.info("START [{}] File:[{}]", key, entry.name);
       context.put(SCRIPT_KEY, getNameWithoutExt(entry.name));
-      entry.scenario.runScenario();
+      loader.run(entry);
       log.info("END [{}] File:[{}]", key, entry.name);
     } catch (Exception e) {
       log.error("ERROR [{}]: {}", key, e.getMessage(), e);
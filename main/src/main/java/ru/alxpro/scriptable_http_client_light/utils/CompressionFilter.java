@@ -0,0 +1,211 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Runs before Slf4jLogFilter on responses (higher priority), so logs see decoded bodies
+public class CompressionFilter
+    implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor {
+
+  public static final int PRIORITY = 6000;
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+  private final boolean decodeResponses;
+  private final String requestEncoding;
+  private final int minSize;
+  private final Stats stats = new Stats();
+
+  public static class Stats {
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder requestRaw = new LongAdder();
+    final LongAdder requestWire = new LongAdder();
+    final LongAdder responses = new LongAdder();
+    final LongAdder responseRaw = new LongAdder();
+    final LongAdder responseWire = new LongAdder();
+
+    public long getBytesSaved() {
+      return requestRaw.sum() - requestWire.sum() + responseRaw.sum() - responseWire.sum();
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("compressedRequests", requests.sum());
+      map.put("requestBytesSaved", requestRaw.sum() - requestWire.sum());
+      map.put("decodedResponses", responses.sum());
+      map.put("responseBytesSaved", responseRaw.sum() - responseWire.sum());
+      map.put("bytesSaved", getBytesSaved());
+      return map;
+    }
+  }
+
+  public CompressionFilter(boolean decodeResponses, String requestEncoding, int minSize) {
+    this.decodeResponses = decodeResponses;
+    this.requestEncoding = GZIP.equalsIgnoreCase(requestEncoding) ? GZIP
+        : DEFLATE.equalsIgnoreCase(requestEncoding) ? DEFLATE : null;
+    this.minSize = minSize;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  @Override
+  public void filter(ClientRequestContext reqCtx) {
+    if (decodeResponses && !reqCtx.getHeaders().containsKey("Accept-Encoding")) {
+      reqCtx.getHeaders().putSingle("Accept-Encoding", GZIP + ", " + DEFLATE);
+    }
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext ctx) throws IOException {
+    if (requestEncoding == null || ctx.getHeaders().containsKey("Content-Encoding")
+        || knownSize(ctx.getEntity()) < minSize) {
+      ctx.proceed();
+      return;
+    }
+    ctx.getHeaders().putSingle("Content-Encoding", requestEncoding);
+    ctx.getHeaders().remove("Content-Length");
+    CountingOutputStream wire = new CountingOutputStream(ctx.getOutputStream());
+    DeflaterOutputStream zip = GZIP.equals(requestEncoding)
+        ? new GZIPOutputStream(wire) : new DeflaterOutputStream(wire);
+    CountingOutputStream raw = new CountingOutputStream(zip);
+    ctx.setOutputStream(raw);
+    try {
+      ctx.proceed();
+    } finally {
+      zip.finish();
+      stats.requests.increment();
+      stats.requestRaw.add(raw.count);
+      stats.requestWire.add(wire.count);
+    }
+  }
+
+  // Unknown sizes (streams, objects) are compressed
+  private static long knownSize(Object entity) {
+    if (entity instanceof String) {
+      return ((String) entity).getBytes(StandardCharsets.UTF_8).length;
+    }
+    if (entity instanceof byte[]) {
+      return ((byte[]) entity).length;
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public void filter(ClientRequestContext reqCtx, ClientResponseContext rspCtx)
+      throws IOException {
+    String encoding = rspCtx.getHeaderString("Content-Encoding");
+    if (!decodeResponses || encoding == null || !rspCtx.hasEntity()) {
+      return;
+    }
+    encoding = encoding.trim().toLowerCase();
+    if (!GZIP.equals(encoding) && !"x-gzip".equals(encoding) && !DEFLATE.equals(encoding)) {
+      return;
+    }
+    CountingInputStream wire = new CountingInputStream(rspCtx.getEntityStream(), null);
+    InputStream decoded = DEFLATE.equals(encoding)
+        ? new InflaterInputStream(wire) : new GZIPInputStream(wire);
+    rspCtx.setEntityStream(new CountingInputStream(decoded, wire));
+    rspCtx.getHeaders().remove("Content-Encoding");
+    rspCtx.getHeaders().remove("Content-Length");
+  }
+
+  private static class CountingOutputStream extends FilterOutputStream {
+
+    long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  // Decoded side records both counters once and releases the wire on EOF or close:
+  // gzip stops at its trailer, so the connection would never see end of stream
+  private class CountingInputStream extends FilterInputStream {
+
+    private final CountingInputStream wire;
+    long count;
+    private boolean done;
+
+    CountingInputStream(InputStream in, CountingInputStream wire) {
+      super(in);
+      this.wire = wire;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (wire != null && done) {
+        return -1;
+      }
+      int b = in.read();
+      if (b >= 0) {
+        count++;
+      } else {
+        finish();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (wire != null && done) {
+        return -1;
+      }
+      int n = in.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      } else if (n < 0) {
+        finish();
+      }
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (wire == null || !done) {
+        finish();
+        super.close();
+      }
+    }
+
+    private void finish() throws IOException {
+      if (wire != null && !done) {
+        done = true;
+        stats.responses.increment();
+        stats.responseRaw.add(count);
+        stats.responseWire.add(wire.count);
+        in.close();
+      }
+    }
+  }
+}
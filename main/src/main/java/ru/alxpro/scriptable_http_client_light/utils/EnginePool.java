@@ -0,0 +1,133 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import ru.alxpro.scriptable_http_client_light.script.JsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Isolated script globals for concurrent runs. Scripts are compiled once by the shared
+// engine; every worker evaluates them in its own global, with the services bound and a
+// logger of its own, so globals such as "scenario" and the error flag are never shared.
+// A worker serves one thread at a time: acquire(), run, close()
+public class EnginePool {
+
+  private static final Logger log = LoggerFactory.getLogger(EnginePool.class);
+  private final ScriptEngine engine;
+  private final Map<String, Object> services;
+  // Null = unbounded, one worker per concurrent caller
+  private final Semaphore slots;
+  private final Deque<Worker> idle = new ArrayDeque<>();
+  private final AtomicInteger created = new AtomicInteger();
+
+  // maxSize <= 0: no limit
+  public EnginePool(ScriptEngine engine, Map<String, Object> services, int maxSize) {
+    this.engine = engine;
+    this.services = services;
+    this.slots = maxSize > 0 ? new Semaphore(maxSize, true) : null;
+  }
+
+  public class Worker implements AutoCloseable {
+
+    private final ScriptContext context = new SimpleScriptContext();
+    private final JsLogger logger = new JsLogger();
+    // Per compiled script, so a reloaded file is evaluated afresh
+    private final Map<CompiledScript, ScriptLoader.Scenario> scenarios = new IdentityHashMap<>();
+
+    private Worker() {
+      Bindings global = engine.createBindings();
+      global.putAll(services);
+      global.put("logger", logger);
+      context.setBindings(global, ScriptContext.ENGINE_SCOPE);
+    }
+
+    // The entry's scenario in this worker's global, evaluated on first use
+    ScriptLoader.Scenario scenario(ScriptLoader.ScriptEntry entry) throws ScriptException {
+      ScriptLoader.Scenario scenario = scenarios.get(entry.compiled);
+      if (scenario == null) {
+        if (entry.isScenario) {
+          Object object = entry.compiled.eval(context);
+          scenario = ((Invocable) engine).getInterface(object, ScriptLoader.Scenario.class);
+          if (scenario == null) {
+            throw new ScriptException("Not a scenario in this worker: " + entry.name);
+          }
+        } else {
+          scenario = () -> entry.compiled.eval(context);
+        }
+        scenarios.put(entry.compiled, scenario);
+      }
+      return scenario;
+    }
+
+    JsLogger getLogger() {
+      return logger;
+    }
+
+    @Override
+    public void close() {
+      release(this);
+    }
+  }
+
+  // Per-execution outcome of ScriptLoader.run(entry, worker)
+  public static class Execution {
+
+    public final boolean success;
+    // Exception message, or the JS logger reporting an error
+    public final String error;
+    public final long nanos;
+
+    Execution(boolean success, String error, long nanos) {
+      this.success = success;
+      this.error = error;
+      this.nanos = nanos;
+    }
+  }
+
+  // Blocks while maxSize workers are checked out
+  public Worker acquire() throws InterruptedException {
+    if (slots != null) {
+      slots.acquire();
+    }
+    synchronized (idle) {
+      Worker worker = idle.pollFirst();
+      if (worker != null) {
+        return worker;
+      }
+    }
+    try {
+      Worker worker = new Worker();
+      log.debug("Script worker {} created", created.incrementAndGet());
+      return worker;
+    } catch (RuntimeException e) {
+      if (slots != null) {
+        slots.release();
+      }
+      throw e;
+    }
+  }
+
+  private void release(Worker worker) {
+    synchronized (idle) {
+      idle.addFirst(worker);
+    }
+    if (slots != null) {
+      slots.release();
+    }
+  }
+
+  public int getCreated() {
+    return created.get();
+  }
+}
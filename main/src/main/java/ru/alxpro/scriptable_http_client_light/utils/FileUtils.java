@@ -3,6 +3,10 @@ package ru.alxpro.scriptable_http_client_light.utils;
 import com.google.gson.GsonBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -47,34 +51,58 @@ public class FileUtils {
       if (!name.toLowerCase().endsWith(ext)) {
         name += ext;
       }
-      File dataDir = Main.getDataDir();
-      File target;
-      if (parent != null && !parent.isBlank()) {
-        target = new File(new File(dataDir, parent), name);
-      } else {
-        target = new File(dataDir, name);
-      }
-      String dataPath = dataDir.getCanonicalPath();
-      String targetPath = target.getCanonicalPath();
-      if (!targetPath.startsWith(dataPath)) {
-        throw new SecurityException("Cannot save file outside of the 'data' dir.");
-      }
-      File targetDir = target.getParentFile();
-      if (targetDir != null && !targetDir.exists() && !targetDir.mkdirs()) {
-        throw new IOException("Failed to make parents dirs");
-      }
+      File target = resolveDataDirTarget(parent, name);
       Files.writeString(
           target.toPath(), content, StandardCharsets.UTF_8,
           StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
       );
-      Path path = Paths.get(targetPath);
-      return dataDir.toPath().relativize(path).toString();
+      return relativeToDataDir(target);
     } catch (IOException | SecurityException e) {
       log.error("Failed to save file '{}': {}", name, e.getMessage());
       throw new RuntimeException("Error: " + e.getMessage(), e);
     }
   }
 
+  public static File resolveDataDirTarget(String parent, String name) throws IOException {
+    File dataDir = Main.getDataDir();
+    File target;
+    if (parent != null && !parent.isBlank()) {
+      target = new File(new File(dataDir, parent), name);
+    } else {
+      target = new File(dataDir, name);
+    }
+    String dataPath = dataDir.getCanonicalPath();
+    String targetPath = target.getCanonicalPath();
+    if (!targetPath.startsWith(dataPath)) {
+      throw new SecurityException("Cannot save file outside of the 'data' dir.");
+    }
+    File targetDir = target.getParentFile();
+    if (targetDir != null && !targetDir.exists() && !targetDir.mkdirs()) {
+      throw new IOException("Failed to make parents dirs");
+    }
+    return new File(targetPath);
+  }
+
+  public static String relativeToDataDir(File target) throws IOException {
+    Path path = Paths.get(target.getCanonicalPath());
+    return Main.getDataDir().toPath().relativize(path).toString();
+  }
+
+  // Copies through the channel buffer, the stream is never held in memory
+  public static long transferTo(InputStream in, File target) throws IOException {
+    try (ReadableByteChannel src = Channels.newChannel(in);
+        FileChannel dst = FileChannel.open(
+            target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      long position = 0;
+      long count;
+      while ((count = dst.transferFrom(src, position, 1 << 20)) > 0) {
+        position += count;
+      }
+      return position;
+    }
+  }
+
   public static String readFileDataDir(String name) {
     try {
       File dataDir = Main.getDataDir();
@@ -0,0 +1,410 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.MediaType;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import ru.alxpro.scriptable_http_client_light.script.JTimings;
+import ru.alxpro.scriptable_http_client_light.script.client.RequestTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// HAR 1.2 recorder: entries are queued to a writer thread that appends them to
+// data/<SCRIPT_KEY>/<SCRIPT_KEY>-<time>.har, the file is completed on close()
+public class HarRecorder implements ClientRequestFilter, ClientResponseFilter {
+
+  private static final Logger log = LoggerFactory.getLogger(HarRecorder.class);
+  // After CompressionFilter on responses, so bodies are decoded
+  public static final int PRIORITY = 5500;
+  private static final String START_PROP = "harRecorder.start";
+  private static final String SCRIPT_PROP = "harRecorder.script";
+  private static final DateTimeFormatter FILE_TIME =
+      DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+  private static final Map<String, Object> STOP = new HashMap<>();
+  private final Gson gson = new Gson();
+  private final Supplier<String> scriptKey;
+  private final boolean bodies;
+  private final int maxBodySize;
+  private final BlockingQueue<Map<String, Object>> queue;
+  private final Thread writer;
+  private final Map<String, Writer> files = new HashMap<>();
+  private final LongAdder recorded = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  public HarRecorder(Supplier<String> scriptKey, boolean bodies, int maxBodySize, int queueSize) {
+    this.scriptKey = scriptKey;
+    this.bodies = bodies;
+    this.maxBodySize = maxBodySize;
+    this.queue = new ArrayBlockingQueue<>(Math.max(16, queueSize));
+    this.writer = new Thread(this::writeLoop, "har-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  @Override
+  public void filter(ClientRequestContext reqCtx) {
+    reqCtx.setProperty(START_PROP, new long[]{System.currentTimeMillis(), System.nanoTime()});
+    String key = scriptKey.get();
+    reqCtx.setProperty(SCRIPT_PROP, key != null ? key : "session");
+  }
+
+  @Override
+  public void filter(ClientRequestContext reqCtx, ClientResponseContext rspCtx) {
+    long[] start = (long[]) reqCtx.getProperty(START_PROP);
+    if (start == null) {
+      // Served from cache without a request
+      return;
+    }
+    long headersAt = System.nanoTime();
+    Exchange exchange = new Exchange(reqCtx, rspCtx, start, headersAt);
+    if (rspCtx.hasEntity() && reqCtx.getProperty(Slf4jLogFilter.SKIP_BODY) == null) {
+      rspCtx.setEntityStream(new CaptureInputStream(rspCtx.getEntityStream(), exchange));
+    } else {
+      exchange.finish(new byte[0], 0);
+    }
+  }
+
+  // Request side is captured in the response filter: by then every request
+  // filter has run and the headers are the ones sent
+  private class Exchange {
+
+    private final Map<String, Object> request = new LinkedHashMap<>();
+    private final Map<String, Object> response = new LinkedHashMap<>();
+    private final String script;
+    private final long[] start;
+    private final long headersAt;
+    private final MediaType contentType;
+    // Phases seen by the transport, null outside of a client request
+    private final RequestTimer timer;
+    private final String protocol;
+
+    Exchange(ClientRequestContext reqCtx, ClientResponseContext rspCtx, long[] start,
+        long headersAt) {
+      this.script = (String) reqCtx.getProperty(SCRIPT_PROP);
+      this.start = start;
+      this.headersAt = headersAt;
+      this.contentType = rspCtx.getMediaType();
+      this.timer = RequestTimer.current();
+      // Cache hits and aborted requests never saw a status line
+      String version = timer != null ? timer.getProtocol() : null;
+      this.protocol = version != null ? version : "unknown";
+
+      request.put("method", reqCtx.getMethod());
+      request.put("url", reqCtx.getUri().toString());
+      request.put("httpVersion", protocol);
+      request.put("cookies", List.of());
+      request.put("headers", headers(reqCtx.getStringHeaders()));
+      request.put("queryString", query(reqCtx.getUri().getRawQuery()));
+      request.put("headersSize", -1);
+      Object entity = reqCtx.getEntity();
+      String text = entity == null ? null
+          : entity instanceof Form ? ((Form) entity).asMap().toString() : String.valueOf(entity);
+      request.put("bodySize", text == null ? 0 : text.getBytes(UTF_8).length);
+      if (text != null && bodies) {
+        Map<String, Object> post = new LinkedHashMap<>();
+        MediaType type = reqCtx.getMediaType();
+        post.put("mimeType", type != null ? type.toString() : "");
+        post.put("text", truncate(text));
+        request.put("postData", post);
+      }
+
+      response.put("status", rspCtx.getStatus());
+      response.put("statusText", rspCtx.getStatusInfo().getReasonPhrase());
+      response.put("httpVersion", protocol);
+      response.put("cookies", List.of());
+      response.put("headers", headers(rspCtx.getHeaders()));
+      String location = rspCtx.getHeaderString("Location");
+      response.put("redirectURL", location != null ? location : "");
+      response.put("headersSize", -1);
+    }
+
+    void finish(byte[] prefix, long size) {
+      long end = System.nanoTime();
+      Map<String, Object> content = new LinkedHashMap<>();
+      content.put("size", size);
+      content.put("mimeType", contentType != null ? contentType.toString() : "");
+      if (bodies && size > 0) {
+        if (isText(contentType)) {
+          content.put("text", new String(prefix, charset(contentType)));
+        } else {
+          content.put("text", Base64.getEncoder().encodeToString(prefix));
+          content.put("encoding", "base64");
+        }
+        if (prefix.length < size) {
+          content.put("comment", "truncated to " + prefix.length + " bytes");
+        }
+      }
+      response.put("content", content);
+      response.put("bodySize", size);
+
+      JTimings phases = timer != null ? timer.toTimings() : null;
+      double wait;
+      double receive;
+      Map<String, Object> timings = new LinkedHashMap<>();
+      if (phases != null && phases.sent >= 0) {
+        // Request filter time would count the connection phases a second time
+        wait = phases.ttfb;
+        receive = phases.download;
+        // HAR connect includes ssl
+        timings.put("blocked", phases.queued);
+        timings.put("dns", phases.dns);
+        timings.put("connect", phases.connect < 0 ? -1 : phases.connect + phases.tls);
+        timings.put("ssl", phases.tls);
+        timings.put("send", phases.sent);
+      } else {
+        timings.put("blocked", -1);
+        timings.put("dns", -1);
+        timings.put("connect", -1);
+        timings.put("ssl", -1);
+        timings.put("send", 0);
+        wait = (headersAt - start[1]) / 1_000_000.0;
+        receive = (end - headersAt) / 1_000_000.0;
+      }
+      timings.put("wait", wait);
+      timings.put("receive", receive);
+
+      Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("startedDateTime", Instant.ofEpochMilli(start[0]).toString());
+      // HAR time is the sum of the known phases
+      entry.put("time", timings.values().stream()
+          .mapToDouble(v -> ((Number) v).doubleValue()).filter(v -> v > 0).sum());
+      entry.put("request", request);
+      entry.put("response", response);
+      entry.put("cache", Map.of());
+      entry.put("timings", timings);
+      entry.put("_script", script);
+      if (!queue.offer(entry)) {
+        // Writer is behind: keep memory bounded rather than block the request
+        dropped.increment();
+      }
+    }
+  }
+
+  private String truncate(String text) {
+    return text.length() > maxBodySize ? text.substring(0, maxBodySize) : text;
+  }
+
+  private static List<Map<String, String>> headers(Map<String, List<String>> headers) {
+    List<Map<String, String>> list = new ArrayList<>();
+    headers.forEach((name, values) -> {
+      for (Object value : values) {
+        String v = "Authorization".equalsIgnoreCase(name) ? "***********" : String.valueOf(value);
+        list.add(nameValue(name, v));
+      }
+    });
+    return list;
+  }
+
+  private static List<Map<String, String>> query(String rawQuery) {
+    List<Map<String, String>> list = new ArrayList<>();
+    if (rawQuery != null && !rawQuery.isEmpty()) {
+      for (String pair : rawQuery.split("&")) {
+        int idx = pair.indexOf('=');
+        list.add(nameValue(
+            idx < 0 ? pair : pair.substring(0, idx), idx < 0 ? "" : pair.substring(idx + 1)));
+      }
+    }
+    return list;
+  }
+
+  private static Map<String, String> nameValue(String name, String value) {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("name", name);
+    map.put("value", value);
+    return map;
+  }
+
+  private static boolean isText(MediaType type) {
+    if (type == null) {
+      return true;
+    }
+    String sub = type.getSubtype().toLowerCase();
+    return "text".equalsIgnoreCase(type.getType()) || sub.contains("json")
+        || sub.contains("xml") || sub.contains("javascript") || sub.contains("form");
+  }
+
+  private static Charset charset(MediaType type) {
+    String name = type != null ? type.getParameters().get("charset") : null;
+    try {
+      return name != null ? Charset.forName(name) : UTF_8;
+    } catch (Exception e) {
+      return UTF_8;
+    }
+  }
+
+  private class CaptureInputStream extends FilterInputStream {
+
+    private final Exchange exchange;
+    private final byte[] prefix = new byte[bodies ? maxBodySize : 0];
+    private int captured;
+    private long size;
+    private boolean done;
+
+    CaptureInputStream(InputStream in, Exchange exchange) {
+      super(in);
+      this.exchange = exchange;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        finish();
+      } else {
+        if (captured < prefix.length) {
+          prefix[captured++] = (byte) b;
+        }
+        size++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n < 0) {
+        finish();
+      } else if (n > 0) {
+        int copy = Math.min(n, prefix.length - captured);
+        System.arraycopy(b, off, prefix, captured, copy);
+        captured += copy;
+        size += n;
+      }
+      return n;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+      super.close();
+    }
+
+    private void finish() {
+      if (!done) {
+        done = true;
+        exchange.finish(Arrays.copyOf(prefix, captured), size);
+      }
+    }
+  }
+
+  private void writeLoop() {
+    try {
+      while (true) {
+        Map<String, Object> entry = queue.poll(1, TimeUnit.SECONDS);
+        if (entry == STOP) {
+          break;
+        }
+        if (entry != null) {
+          write(entry);
+          // Drain what is already queued before flushing
+          while ((entry = queue.poll()) != null && entry != STOP) {
+            write(entry);
+          }
+          flushAll();
+          if (entry == STOP) {
+            break;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    closeAll();
+  }
+
+  private void write(Map<String, Object> entry) {
+    String script = (String) entry.get("_script");
+    try {
+      Writer out = files.get(script);
+      if (out == null) {
+        String name = script + "-" + LocalDateTime.now().format(FILE_TIME) + ".har";
+        File target = FileUtils.resolveDataDirTarget(script, name);
+        out = new BufferedWriter(Files.newBufferedWriter(target.toPath(), UTF_8), 1 << 16);
+        out.write("{\"log\":{\"version\":\"1.2\",\"creator\":"
+            + "{\"name\":\"scriptable-http-client-light\",\"version\":\"1.0\"},"
+            + "\"pages\":[],\"entries\":[\n");
+        files.put(script, out);
+        log.info("HAR recording to {}", FileUtils.relativeToDataDir(target));
+      } else {
+        out.write(",\n");
+      }
+      gson.toJson(entry, out);
+      recorded.increment();
+    } catch (IOException | RuntimeException e) {
+      log.warn("HAR write failed: {}", e.getMessage());
+    }
+  }
+
+  private void flushAll() {
+    for (Writer out : files.values()) {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        log.warn("HAR flush failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  private void closeAll() {
+    for (Writer out : files.values()) {
+      try {
+        out.write("\n]}}\n");
+        out.close();
+      } catch (IOException e) {
+        log.warn("HAR close failed: {}", e.getMessage());
+      }
+    }
+    files.clear();
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("recorded", recorded.sum());
+    stats.put("dropped", dropped.sum());
+    stats.put("queued", queue.size());
+    return stats;
+  }
+
+  // Writes the queued entries and completes the files
+  public void close() {
+    try {
+      queue.put(STOP);
+      writer.join(10_000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,576 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Private HTTP cache for GET: Cache-Control/Expires freshness, ETag/Last-Modified revalidation.
+// Response side runs after CompressionFilter and Slf4jLogFilter, so bodies are stored decoded.
+// File I/O happens outside the locks: the disk tier keeps its own size index in memory and
+// only trims (down to DISK_LOW_WATER of its cap) when a store pushes it past the cap
+public class HttpCacheFilter implements ClientRequestFilter, ClientResponseFilter {
+
+  private static final Logger log = LoggerFactory.getLogger(HttpCacheFilter.class);
+  public static final int PRIORITY = 4000;
+  private static final String ENTRY_PROP = "httpCache.entry";
+  private static final String KEY_PROP = "httpCache.key";
+  private static final String SERVED_PROP = "httpCache.served";
+  // 304 headers that describe the connection or the empty 304 body, not the cached one
+  private static final Set<String> NOT_MERGED = Set.of("connection", "keep-alive",
+      "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding",
+      "upgrade", "content-length");
+  // Share of cache.diskMaxBytes left after a trim
+  private static final double DISK_LOW_WATER = 0.9;
+  private final long maxBytes;
+  private final long maxEntrySize;
+  private final File diskDir;
+  private final long diskMaxBytes;
+  private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+  // Not synchronized: monitors would pin virtual threads
+  private final ReentrantLock lock = new ReentrantLock();
+  private long memoryBytes;
+  // Cache file name to size, least recently used first
+  private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(64, 0.75f, true);
+  private final ReentrantLock diskLock = new ReentrantLock();
+  private long diskBytes;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder revalidated = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder stores = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder diskHits = new LongAdder();
+
+  // Shared by concurrent requests once stored, never modified
+  static class Entry {
+
+    final String key;
+    final int status;
+    final Map<String, List<String>> headers;
+    final byte[] body;
+    final Map<String, String> vary;
+    final long storedAt;
+    final long expiresAt;
+
+    Entry(
+        String key, int status, Map<String, List<String>> headers, byte[] body,
+        Map<String, String> vary, long storedAt, long expiresAt
+    ) {
+      this.key = key;
+      this.status = status;
+      this.headers = headers;
+      this.body = body;
+      this.vary = vary;
+      this.storedAt = storedAt;
+      this.expiresAt = expiresAt;
+    }
+
+    String header(String name) {
+      for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+        if (e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty()) {
+          return e.getValue().get(0);
+        }
+      }
+      return null;
+    }
+
+    long size() {
+      return body.length + 256L;
+    }
+  }
+
+  // diskDir == null keeps the cache in memory only
+  public HttpCacheFilter(long maxBytes, long maxEntrySize, File diskDir, long diskMaxBytes) {
+    this.maxBytes = maxBytes;
+    this.maxEntrySize = maxEntrySize;
+    this.diskDir = diskDir;
+    this.diskMaxBytes = diskMaxBytes;
+    if (diskDir != null && !diskDir.exists() && !diskDir.mkdirs()) {
+      log.warn("Could not create cache dir: {}", diskDir);
+    }
+    if (diskDir != null) {
+      loadDiskIndex();
+    }
+  }
+
+  // Once at startup: files of earlier runs, oldest access first
+  private void loadDiskIndex() {
+    File[] files = diskDir.listFiles((d, n) -> n.endsWith(".cache"));
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File f : files) {
+      diskIndex.put(f.getName(), f.length());
+      diskBytes += f.length();
+    }
+  }
+
+  @Override
+  public void filter(ClientRequestContext reqCtx) {
+    if (!"GET".equals(reqCtx.getMethod()) || reqCtx.getProperty(Slf4jLogFilter.SKIP_BODY) != null) {
+      return;
+    }
+    String reqCc = lower(reqCtx.getHeaderString("Cache-Control"));
+    if (reqCc.contains("no-store")) {
+      return;
+    }
+    String key = keyOf(reqCtx);
+    reqCtx.setProperty(KEY_PROP, key);
+    Entry entry = lookup(key);
+    if (entry == null || !varyMatches(entry, reqCtx)) {
+      misses.increment();
+      return;
+    }
+    if (!reqCc.contains("no-cache") && System.currentTimeMillis() < entry.expiresAt) {
+      hits.increment();
+      reqCtx.setProperty(SERVED_PROP, true);
+      reqCtx.abortWith(toResponse(entry, "HIT"));
+      return;
+    }
+    String etag = entry.header("ETag");
+    String lastModified = entry.header("Last-Modified");
+    if (etag == null && lastModified == null) {
+      misses.increment();
+      return;
+    }
+    if (etag != null && !reqCtx.getHeaders().containsKey("If-None-Match")) {
+      reqCtx.getHeaders().putSingle("If-None-Match", etag);
+    }
+    if (lastModified != null && !reqCtx.getHeaders().containsKey("If-Modified-Since")) {
+      reqCtx.getHeaders().putSingle("If-Modified-Since", lastModified);
+    }
+    reqCtx.setProperty(ENTRY_PROP, entry);
+  }
+
+  @Override
+  public void filter(ClientRequestContext reqCtx, ClientResponseContext rspCtx)
+      throws IOException {
+    String key = (String) reqCtx.getProperty(KEY_PROP);
+    if (key == null || reqCtx.getProperty(SERVED_PROP) != null) {
+      return;
+    }
+    Entry cached = (Entry) reqCtx.getProperty(ENTRY_PROP);
+    if (cached != null && rspCtx.getStatus() == 304) {
+      revalidated.increment();
+      Entry entry = revalidate(cached, rspCtx);
+      store(entry);
+      rspCtx.setStatus(entry.status);
+      rspCtx.getHeaders().clear();
+      entry.headers.forEach((k, v) -> rspCtx.getHeaders().addAll(k, v.toArray(new String[0])));
+      rspCtx.getHeaders().putSingle("X-Cache", "REVALIDATED");
+      rspCtx.setEntityStream(new ByteArrayInputStream(entry.body));
+      return;
+    }
+    if (rspCtx.getStatus() != 200 || !rspCtx.hasEntity()) {
+      return;
+    }
+    String cc = lower(rspCtx.getHeaderString("Cache-Control"));
+    String vary = rspCtx.getHeaderString("Vary");
+    if (cc.contains("no-store") || (vary != null && vary.contains("*"))) {
+      return;
+    }
+    int length = rspCtx.getLength();
+    if (length > maxEntrySize) {
+      return;
+    }
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    rspCtx.getHeaders().forEach((k, v) -> headers.put(k, new ArrayList<>(v)));
+    long now = System.currentTimeMillis();
+    long expires = expiresAt(headers, now);
+    boolean validators = rspCtx.getHeaderString("ETag") != null
+        || rspCtx.getHeaderString("Last-Modified") != null;
+    if (expires <= now && !validators) {
+      return;
+    }
+    byte[] body;
+    try (InputStream in = rspCtx.getEntityStream()) {
+      body = in.readNBytes((int) maxEntrySize + 1);
+      if (body.length > maxEntrySize) {
+        // Too big after all: hand back what was read plus the rest of the stream
+        rspCtx.setEntityStream(new ByteArrayInputStream(concat(body, in.readAllBytes())));
+        return;
+      }
+    }
+    rspCtx.setEntityStream(new ByteArrayInputStream(body));
+    store(new Entry(key, 200, headers, body, varyValues(vary, reqCtx), now, expires));
+  }
+
+  // 304 carries fresh validators and freshness info, merged into a copy of the entry
+  private static Entry revalidate(Entry cached, ClientResponseContext rspCtx) {
+    Map<String, List<String>> headers = new LinkedHashMap<>();
+    cached.headers.forEach((k, v) -> headers.put(k, new ArrayList<>(v)));
+    rspCtx.getHeaders().forEach((k, v) -> {
+      if (!NOT_MERGED.contains(k.toLowerCase())) {
+        headers.keySet().removeIf(name -> name.equalsIgnoreCase(k));
+        headers.put(k, new ArrayList<>(v));
+      }
+    });
+    long now = System.currentTimeMillis();
+    return new Entry(cached.key, cached.status, headers, cached.body, cached.vary, now,
+        expiresAt(headers, now));
+  }
+
+  private static byte[] concat(byte[] a, byte[] b) {
+    byte[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  private static String lower(String value) {
+    return value == null ? "" : value.toLowerCase();
+  }
+
+  private static String keyOf(ClientRequestContext reqCtx) {
+    // Different credentials may see different content
+    String auth = reqCtx.getHeaderString("Authorization");
+    String key = "GET " + reqCtx.getUri();
+    return auth == null ? key : key + " #" + sha256(auth).substring(0, 16);
+  }
+
+  private static Map<String, String> varyValues(String vary, ClientRequestContext reqCtx) {
+    Map<String, String> values = new LinkedHashMap<>();
+    if (vary != null) {
+      for (String name : vary.split(",")) {
+        String n = name.trim();
+        if (!n.isEmpty()) {
+          values.put(n, reqCtx.getHeaderString(n));
+        }
+      }
+    }
+    return values;
+  }
+
+  private static boolean varyMatches(Entry entry, ClientRequestContext reqCtx) {
+    for (Map.Entry<String, String> e : entry.vary.entrySet()) {
+      String current = reqCtx.getHeaderString(e.getKey());
+      if (current == null ? e.getValue() != null : !current.equals(e.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static long expiresAt(Map<String, List<String>> headers, long now) {
+    String cc = null;
+    String expires = null;
+    String date = null;
+    for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+      String value = e.getValue().isEmpty() ? null : String.join(",", e.getValue());
+      if ("Cache-Control".equalsIgnoreCase(e.getKey())) {
+        cc = value;
+      } else if ("Expires".equalsIgnoreCase(e.getKey())) {
+        expires = value;
+      } else if ("Date".equalsIgnoreCase(e.getKey())) {
+        date = value;
+      }
+    }
+    if (cc != null) {
+      String lc = cc.toLowerCase();
+      if (lc.contains("no-cache") || lc.contains("must-revalidate") && lc.contains("max-age=0")) {
+        return now;
+      }
+      for (String part : lc.split(",")) {
+        String p = part.trim();
+        if (p.startsWith("max-age=")) {
+          try {
+            return now + Long.parseLong(p.substring(8).trim()) * 1000;
+          } catch (NumberFormatException ignored) {
+            return now;
+          }
+        }
+      }
+    }
+    if (expires != null) {
+      try {
+        long exp = parseDate(expires);
+        long base = date != null ? parseDate(date) : now;
+        return now + Math.max(0, exp - base);
+      } catch (Exception ignored) {
+        return now;
+      }
+    }
+    return now;
+  }
+
+  private static long parseDate(String value) {
+    return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+        .toInstant().toEpochMilli();
+  }
+
+  private static Response toResponse(Entry entry, String state) {
+    Response.ResponseBuilder rb = Response.status(entry.status);
+    entry.headers.forEach((k, v) -> v.forEach(val -> rb.header(k, val)));
+    rb.header("X-Cache", state);
+    rb.entity(new ByteArrayInputStream(entry.body));
+    return rb.build();
+  }
+
+  private Entry lookup(String key) {
+    lock.lock();
+    try {
+      Entry entry = memory.get(key);
+      if (entry != null || diskDir == null) {
+        return entry;
+      }
+    } finally {
+      lock.unlock();
+    }
+    Entry entry = readDisk(key);
+    if (entry != null) {
+      diskHits.increment();
+      putMemory(entry);
+    }
+    return entry;
+  }
+
+  private void store(Entry entry) {
+    stores.increment();
+    putMemory(entry);
+    if (diskDir != null) {
+      writeDisk(entry);
+    }
+  }
+
+  private void putMemory(Entry entry) {
+    lock.lock();
+    try {
+      Entry old = memory.put(entry.key, entry);
+      if (old != null) {
+        memoryBytes -= old.size();
+      }
+      memoryBytes += entry.size();
+      var it = memory.values().iterator();
+      while (memoryBytes > maxBytes && it.hasNext()) {
+        Entry eldest = it.next();
+        it.remove();
+        memoryBytes -= eldest.size();
+        evictions.increment();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private File diskFile(String key) {
+    return new File(diskDir, sha256(key) + ".cache");
+  }
+
+  private Entry readDisk(String key) {
+    File file = diskFile(key);
+    diskLock.lock();
+    try {
+      if (diskIndex.get(file.getName()) == null) {
+        return null;
+      }
+    } finally {
+      diskLock.unlock();
+    }
+    try (var in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+      if (!key.equals(in.readUTF())) {
+        return null;
+      }
+      int status = in.readInt();
+      long storedAt = in.readLong();
+      long expiresAt = in.readLong();
+      Map<String, List<String>> headers = new LinkedHashMap<>();
+      int hc = in.readInt();
+      for (int i = 0; i < hc; i++) {
+        String name = in.readUTF();
+        int vc = in.readInt();
+        List<String> values = new ArrayList<>();
+        for (int j = 0; j < vc; j++) {
+          values.add(in.readUTF());
+        }
+        headers.put(name, values);
+      }
+      Map<String, String> vary = new LinkedHashMap<>();
+      int vc = in.readInt();
+      for (int i = 0; i < vc; i++) {
+        String name = in.readUTF();
+        vary.put(name, in.readBoolean() ? in.readUTF() : null);
+      }
+      byte[] body = new byte[in.readInt()];
+      in.readFully(body);
+      file.setLastModified(System.currentTimeMillis());
+      return new Entry(key, status, headers, body, vary, storedAt, expiresAt);
+    } catch (NoSuchFileException e) {
+      // Trimmed meanwhile
+      return null;
+    } catch (IOException e) {
+      log.warn("Broken cache file {}: {}", file.getName(), e.getMessage());
+      return null;
+    }
+  }
+
+  private void writeDisk(Entry entry) {
+    File file = diskFile(entry.key);
+    File tmp;
+    try {
+      // Unique, concurrent stores of one key must not share it
+      tmp = File.createTempFile(file.getName(), ".tmp", diskDir);
+    } catch (IOException e) {
+      log.warn("Could not write cache file: {}", e.getMessage());
+      return;
+    }
+    try (var out = new DataOutputStream(Files.newOutputStream(tmp.toPath()))) {
+      out.writeUTF(entry.key);
+      out.writeInt(entry.status);
+      out.writeLong(entry.storedAt);
+      out.writeLong(entry.expiresAt);
+      out.writeInt(entry.headers.size());
+      for (Map.Entry<String, List<String>> h : entry.headers.entrySet()) {
+        out.writeUTF(h.getKey());
+        out.writeInt(h.getValue().size());
+        for (String v : h.getValue()) {
+          out.writeUTF(v);
+        }
+      }
+      out.writeInt(entry.vary.size());
+      for (Map.Entry<String, String> v : entry.vary.entrySet()) {
+        out.writeUTF(v.getKey());
+        out.writeBoolean(v.getValue() != null);
+        if (v.getValue() != null) {
+          out.writeUTF(v.getValue());
+        }
+      }
+      out.writeInt(entry.body.length);
+      out.write(entry.body);
+    } catch (IOException e) {
+      tmp.delete();
+      log.warn("Could not write cache file: {}", e.getMessage());
+      return;
+    }
+    try {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      tmp.delete();
+      log.warn("Could not write cache file: {}", e.getMessage());
+      return;
+    }
+    for (String name : indexDisk(file.getName(), file.length())) {
+      if (new File(diskDir, name).delete()) {
+        evictions.increment();
+      }
+    }
+  }
+
+  // Records the stored file, returns the files to delete once past the cap
+  private List<String> indexDisk(String name, long size) {
+    List<String> victims = new ArrayList<>();
+    diskLock.lock();
+    try {
+      Long old = diskIndex.put(name, size);
+      diskBytes += size - (old != null ? old : 0);
+      if (diskBytes <= diskMaxBytes) {
+        return victims;
+      }
+      long target = (long) (diskMaxBytes * DISK_LOW_WATER);
+      var it = diskIndex.entrySet().iterator();
+      while (diskBytes > target && it.hasNext()) {
+        Map.Entry<String, Long> eldest = it.next();
+        if (eldest.getKey().equals(name)) {
+          continue;
+        }
+        it.remove();
+        diskBytes -= eldest.getValue();
+        victims.add(eldest.getKey());
+      }
+      return victims;
+    } finally {
+      diskLock.unlock();
+    }
+  }
+
+  private static String sha256(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      memory.clear();
+      memoryBytes = 0;
+    } finally {
+      lock.unlock();
+    }
+    if (diskDir == null) {
+      return;
+    }
+    diskLock.lock();
+    try {
+      diskIndex.clear();
+      diskBytes = 0;
+    } finally {
+      diskLock.unlock();
+    }
+    File[] files = diskDir.listFiles((d, n) -> n.endsWith(".cache"));
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    lock.lock();
+    try {
+      stats.put("hits", hits.sum());
+      stats.put("revalidated", revalidated.sum());
+      stats.put("misses", misses.sum());
+      stats.put("diskHits", diskHits.sum());
+      stats.put("stores", stores.sum());
+      stats.put("evictions", evictions.sum());
+      stats.put("entries", memory.size());
+      stats.put("bytes", memoryBytes);
+    } finally {
+      lock.unlock();
+    }
+    if (diskDir != null) {
+      diskLock.lock();
+      try {
+        stats.put("diskEntries", diskIndex.size());
+        stats.put("diskBytes", diskBytes);
+      } finally {
+        diskLock.unlock();
+      }
+    }
+    return stats;
+  }
+}
@@ -0,0 +1,97 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight Recorder events of the client. With no recording running, begin/end/shouldCommit
+// are no-ops and the event objects are scalar-replaced by the JIT.
+// Usage: event.begin(); ... event.end(); if (event.shouldCommit()) { fields; commit(); }
+public final class JfrEvents {
+
+  private static final String CATEGORY = "Scriptable HTTP Client";
+
+  private JfrEvents() {
+  }
+
+  @Name("shc.HttpExchange")
+  @Label("HTTP Exchange")
+  @Description("RestClient request including retries and body read")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class HttpExchange extends Event {
+
+    @Label("Method")
+    public String method;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Status")
+    @Description("0 when no response was received")
+    public int status;
+
+    @Label("Response Bytes")
+    public long bytes;
+  }
+
+  @Name("shc.SoapCall")
+  @Label("SOAP Call")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class SoapCall extends Event {
+
+    @Label("URL")
+    public String url;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Fault")
+    public boolean fault;
+  }
+
+  @Name("shc.TokenFetch")
+  @Label("Token Fetch")
+  @Description("OAuth token request, cached tokens are not recorded")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class TokenFetch extends Event {
+
+    @Label("Token URL")
+    public String url;
+
+    @Label("Success")
+    public boolean success;
+  }
+
+  @Name("shc.XmlConversion")
+  @Label("XML Conversion")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class XmlConversion extends Event {
+
+    @Label("Conversion")
+    @Description("parse, toString, toMap or fromMap")
+    public String conversion;
+  }
+
+  @Name("shc.ScriptRun")
+  @Label("Script Run")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class ScriptRun extends Event {
+
+    @Label("Script")
+    public String script;
+
+    @Label("Success")
+    public boolean success;
+  }
+}
@@ -0,0 +1,151 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram of microseconds in the manner of HdrHistogram: values below
+// 2 * SUB are exact, above that every power of two is split into SUB buckets (~3% error).
+// Recording is a few atomic increments on preallocated arrays, no locks, no allocation
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 5;
+  private static final int SUB = 1 << SUB_BITS;
+  // Up to 2^36 us (~19 h), larger values land in the last bucket
+  private static final int MAX_EXP = 36;
+  private static final int BUCKETS = (MAX_EXP - SUB_BITS + 1) * SUB;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  static int indexOf(long value) {
+    if (value < 2 * SUB) {
+      return (int) Math.max(0, value);
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    if (exp >= MAX_EXP) {
+      return BUCKETS - 1;
+    }
+    int shift = exp - SUB_BITS;
+    return (shift + 1) * SUB + (int) (value >> shift) - SUB;
+  }
+
+  // Highest value that falls into the bucket
+  static long valueOf(int index) {
+    if (index < 2 * SUB) {
+      return index;
+    }
+    int shift = index / SUB - 1;
+    long sub = index % SUB + SUB;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  public void record(long micros) {
+    counts.incrementAndGet(indexOf(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    max.accumulateAndGet(micros, Math::max);
+  }
+
+  // Merges another histogram into this one, e.g. to aggregate several endpoints
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long n = other.counts.get(i);
+      if (n != 0) {
+        counts.addAndGet(i, n);
+      }
+    }
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  // Compact form for another JVM: sum, max, then index/count of each non-empty bucket
+  public long[] toArray() {
+    List<Long> data = new ArrayList<>();
+    data.add(sum.get());
+    data.add(max.get());
+    for (int i = 0; i < BUCKETS; i++) {
+      long n = counts.get(i);
+      if (n != 0) {
+        data.add((long) i);
+        data.add(n);
+      }
+    }
+    return data.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  public static LatencyHistogram fromArray(long[] data) {
+    LatencyHistogram h = new LatencyHistogram();
+    if (data == null || data.length < 2) {
+      return h;
+    }
+    h.sum.set(data[0]);
+    h.max.set(data[1]);
+    for (int i = 2; i + 1 < data.length; i += 2) {
+      if (data[i] < 0 || data[i] >= BUCKETS) {
+        continue;
+      }
+      h.counts.addAndGet((int) data[i], data[i + 1]);
+      h.count.addAndGet(data[i + 1]);
+    }
+    return h;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  // Percentile in 0..100, reads are not synchronized with recording and may be off by
+  // the few values recorded meanwhile
+  public long getPercentile(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(valueOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  // Cumulative counts of values <= each bound (ascending, micros), the last element is the
+  // total; one pass over the buckets, so exporters need no copy of the distribution
+  public long[] countsAtOrBelow(long[] bounds) {
+    long[] result = new long[bounds.length + 1];
+    long seen = 0;
+    int b = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      long upper = valueOf(i);
+      while (b < bounds.length && upper > bounds[b]) {
+        result[b++] = seen;
+      }
+      seen += counts.get(i);
+    }
+    while (b < bounds.length) {
+      result[b++] = seen;
+    }
+    result[bounds.length] = seen;
+    return result;
+  }
+}
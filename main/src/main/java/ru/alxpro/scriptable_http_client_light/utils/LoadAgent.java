@@ -0,0 +1,148 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.security.MessageDigest;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Load generator controlled by a LoadCoordinator: serves one job at a time, each with the
+// scripts and config the coordinator sent. A job runs code, so it must carry the agent's
+// token; traffic is not encrypted, bind beyond loopback on trusted networks only
+public class LoadAgent {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadAgent.class);
+  private final String bind;
+  private final int port;
+  private final String token;
+  private final Handler handler;
+
+  // Loads a job (scripts, transport, runner) so that it can start at once on the signal
+  public interface Handler {
+
+    Prepared prepare(LoadProtocol.Job job) throws Exception;
+  }
+
+  public interface Prepared extends AutoCloseable {
+
+    LoadProtocol.Result run() throws Exception;
+
+    @Override
+    void close();
+  }
+
+  public LoadAgent(String bind, int port, String token, Handler handler) {
+    this.bind = bind;
+    this.port = port;
+    this.token = token;
+    this.handler = handler;
+  }
+
+  // Blocks serving coordinators until the process is stopped
+  public void serve() {
+    try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName(bind))) {
+      log.info("Load agent listening on {}:{}", bind, port);
+      while (true) {
+        try (LoadProtocol.Channel channel = new LoadProtocol.Channel(server.accept())) {
+          serve(channel);
+        } catch (IOException e) {
+          log.warn("Coordinator connection failed: {}", e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      log.error("Load agent failed on {}:{}: {}", bind, port, e.getMessage());
+    }
+  }
+
+  private void serve(LoadProtocol.Channel channel) throws IOException {
+    // A peer that connects and says nothing must not hold the agent
+    channel.setReadTimeout(LoadProtocol.READ_TIMEOUT_MS);
+    LoadProtocol.Job job = channel.receive(LoadProtocol.JOB).job;
+    // Start waits for the slowest agent to load, bounded: a coordinator may vanish
+    // without closing the connection
+    channel.setReadTimeout(LoadProtocol.START_TIMEOUT_MS);
+    if (job == null || job.token == null || !MessageDigest.isEqual(
+        token.getBytes(UTF_8), job.token.getBytes(UTF_8))) {
+      log.warn("Job rejected: bad token from {}", channel.getRemoteAddress());
+      channel.send(error(new SecurityException("Bad agent token")));
+      return;
+    }
+    log.info("Job received: scripts {}, {} VUs", job.ids, job.vus);
+    ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(
+        VirtualThreads.factory("agent-heartbeat-", false));
+    heartbeat.scheduleAtFixedRate(() -> {
+      try {
+        channel.send(new LoadProtocol.Message(LoadProtocol.HEARTBEAT));
+      } catch (IOException ignored) {
+        // The main exchange reports the broken connection
+      }
+    }, LoadProtocol.HEARTBEAT_MS, LoadProtocol.HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    try {
+      run(channel, job);
+    } finally {
+      heartbeat.shutdownNow();
+    }
+  }
+
+  private void run(LoadProtocol.Channel channel, LoadProtocol.Job job) throws IOException {
+    Prepared prepared;
+    try {
+      prepared = handler.prepare(job);
+    } catch (Exception e) {
+      log.error("Job preparation failed: {}", e.getMessage());
+      channel.send(error(e));
+      return;
+    }
+    try (prepared) {
+      channel.send(new LoadProtocol.Message(LoadProtocol.READY));
+      channel.receive(LoadProtocol.START);
+      LoadProtocol.Message reply = new LoadProtocol.Message(LoadProtocol.RESULT);
+      try {
+        reply.result = prepared.run();
+      } catch (Exception e) {
+        log.error("Job failed: {}", e.getMessage());
+        reply = error(e);
+      }
+      channel.send(reply);
+      log.info("Job finished");
+    }
+  }
+
+  private static LoadProtocol.Message error(Exception e) {
+    LoadProtocol.Message message = new LoadProtocol.Message(LoadProtocol.ERROR);
+    message.error = e.getMessage() != null ? e.getMessage() : e.toString();
+    return message;
+  }
+
+  // Result of a finished runner, histograms in their compact form
+  public static LoadProtocol.Result result(LoadRunner runner, MetricsRegistry metrics) {
+    LoadProtocol.Result result = new LoadProtocol.Result();
+    result.label = runner.getLabel();
+    result.measuredMs = runner.getMeasuredMs();
+    result.latency = runner.getLatency().toArray();
+    result.errors = runner.getErrors();
+    result.dropped = runner.getDropped();
+    for (MetricsRegistry.Endpoint e : metrics.endpoints()) {
+      LoadProtocol.EndpointResult r = new LoadProtocol.EndpointResult();
+      r.method = e.method;
+      r.template = e.template;
+      r.statuses = e.getStatuses();
+      r.latency = e.getLatency().toArray();
+      result.endpoints.add(r);
+    }
+    for (MetricsRegistry.ScriptRuns s : metrics.scripts()) {
+      LoadProtocol.ScriptResult r = new LoadProtocol.ScriptResult();
+      r.name = s.name;
+      r.failures = s.getFailures();
+      r.duration = s.getDuration().toArray();
+      result.scripts.add(r);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,169 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Splits a load job across LoadAgents (VUs, iterations and arrival rate, evenly), starts
+// them together and merges their iteration and endpoint histograms into one report
+public class LoadCoordinator implements LoadStats {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadCoordinator.class);
+  private static final int CONNECT_TIMEOUT_MS = 10_000;
+  private final List<String> agents;
+  private final String token;
+  private final MetricsRegistry metrics;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private long errors;
+  private long dropped;
+  private long measuredMs;
+  private final Set<String> labels = new LinkedHashSet<>();
+  private int used;
+
+  // agents: host:port each, all started with the token
+  public LoadCoordinator(List<String> agents, String token, MetricsRegistry metrics) {
+    this.agents = agents;
+    this.token = token;
+    this.metrics = metrics;
+  }
+
+  // Blocks until every agent has reported, returns false when an agent failed or was lost;
+  // failed iterations are in getErrors()
+  public boolean run(LoadProtocol.Job job) {
+    used = agents.size();
+    if (job.stages == null) {
+      used = Math.min(used, Math.max(1, job.vus));
+    }
+    if (job.iterations > 0) {
+      used = (int) Math.min(used, job.iterations);
+    }
+    if (used < agents.size()) {
+      log.warn("Load too small to split, using {} of {} agents", used, agents.size());
+    }
+    List<LoadProtocol.Channel> channels = new ArrayList<>();
+    try {
+      // Every agent loads its share before any of them starts
+      for (int i = 0; i < used; i++) {
+        String agent = agents.get(i);
+        LoadProtocol.Channel channel = new LoadProtocol.Channel(connect(agent));
+        channels.add(channel);
+        LoadProtocol.Message message = new LoadProtocol.Message(LoadProtocol.JOB);
+        message.job = share(job, i);
+        channel.send(message);
+      }
+      for (int i = 0; i < used; i++) {
+        try {
+          channels.get(i).receive(LoadProtocol.READY);
+        } catch (IOException e) {
+          throw new IOException(agents.get(i) + ": " + e.getMessage(), e);
+        }
+      }
+      metrics.reset();
+      log.info("=== Load Started on {} agents ===", used);
+      for (LoadProtocol.Channel channel : channels) {
+        channel.send(new LoadProtocol.Message(LoadProtocol.START));
+      }
+    } catch (IOException e) {
+      log.error("Load agents error: {}", e.getMessage());
+      channels.forEach(LoadProtocol.Channel::close);
+      return false;
+    }
+    boolean ok = true;
+    for (int i = 0; i < used; i++) {
+      try (LoadProtocol.Channel channel = channels.get(i)) {
+        merge(channel.receive(LoadProtocol.RESULT).result);
+      } catch (IOException e) {
+        log.error("Agent {} failed: {}", agents.get(i), e.getMessage());
+        ok = false;
+      }
+    }
+    log.info("=== Load Finished ===\n{}", report());
+    return ok;
+  }
+
+  private static Socket connect(String agent) throws IOException {
+    int colon = agent.lastIndexOf(':');
+    if (colon < 0) {
+      throw new IOException("Agent must be host:port: " + agent);
+    }
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(agent.substring(0, colon),
+          Integer.parseInt(agent.substring(colon + 1))), CONNECT_TIMEOUT_MS);
+      // Agents send heartbeats, silence means a dead or hung agent
+      socket.setSoTimeout(LoadProtocol.READ_TIMEOUT_MS);
+    } catch (IOException | IllegalArgumentException e) {
+      socket.close();
+      throw new IOException(agent + ": " + e.getMessage(), e);
+    }
+    return socket;
+  }
+
+  // Agent index's part: totals divided evenly, the remainder to the first agents
+  private LoadProtocol.Job share(LoadProtocol.Job job, int index) {
+    LoadProtocol.Job part = new LoadProtocol.Job();
+    part.token = token;
+    part.config = job.config;
+    part.scripts = job.scripts;
+    part.ids = job.ids;
+    part.vus = (int) split(job.vus, index);
+    part.durationMs = job.durationMs;
+    part.rampUpMs = job.rampUpMs;
+    part.warmUpMs = job.warmUpMs;
+    part.iterations = split(job.iterations, index);
+    part.rate = job.rate / used;
+    if (job.stages != null) {
+      part.stages = new ArrayList<>();
+      for (LoadRunner.Stage s : job.stages) {
+        part.stages.add(new LoadRunner.Stage(s.durationMs, s.target / used));
+      }
+    }
+    return part;
+  }
+
+  private long split(long total, int index) {
+    return total / used + (index < total % used ? 1 : 0);
+  }
+
+  private void merge(LoadProtocol.Result result) {
+    labels.add(result.label);
+    measuredMs = Math.max(measuredMs, result.measuredMs);
+    latency.add(LatencyHistogram.fromArray(result.latency));
+    errors += result.errors;
+    dropped += result.dropped;
+    for (LoadProtocol.EndpointResult e : result.endpoints) {
+      metrics.merge(e.method, e.template, LatencyHistogram.fromArray(e.latency),
+          e.statuses != null ? e.statuses : Map.of());
+    }
+    for (LoadProtocol.ScriptResult s : result.scripts) {
+      metrics.mergeScript(s.name, LatencyHistogram.fromArray(s.duration), s.failures);
+    }
+  }
+
+  @Override
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public long getErrors() {
+    return errors;
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped;
+  }
+
+  public String report() {
+    String label = used + " agents: " + String.join(" | ", labels);
+    return LoadRunner.report(label, measuredMs, this, metrics);
+  }
+}
@@ -0,0 +1,157 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Coordinator <-> agent messages, one JSON object per line:
+//   coordinator: job -> (agent: ready | error) -> coordinator: start -> agent: result | error
+// While it holds a job the agent also sends a heartbeat every HEARTBEAT_MS, so the
+// coordinator can give up on a silent agent after READ_TIMEOUT_MS. A ready agent waits up
+// to START_TIMEOUT_MS for start, while the slowest agent loads its job
+public class LoadProtocol {
+
+  public static final int HEARTBEAT_MS = 5_000;
+  public static final int READ_TIMEOUT_MS = 30_000;
+  public static final int START_TIMEOUT_MS = 600_000;
+
+  public static final String JOB = "job";
+  public static final String READY = "ready";
+  public static final String START = "start";
+  public static final String RESULT = "result";
+  public static final String ERROR = "error";
+  public static final String HEARTBEAT = "heartbeat";
+
+  public static class Message {
+
+    public String type;
+    public Job job;
+    public Result result;
+    public String error;
+
+    public Message(String type) {
+      this.type = type;
+    }
+  }
+
+  // One agent's share of the load
+  public static class Job {
+
+    // Shared secret, checked by the agent before anything else
+    public String token;
+    // config.properties content, null = defaults
+    public String config;
+    // Scripts folder: file name -> content
+    public Map<String, String> scripts;
+    public List<String> ids;
+    public int vus;
+    public long durationMs;
+    public long rampUpMs;
+    public long warmUpMs;
+    public long iterations;
+    // Open model when stages is not null
+    public double rate;
+    public List<LoadRunner.Stage> stages;
+  }
+
+  public static class Result {
+
+    public String label;
+    public long measuredMs;
+    public long[] latency;
+    public long errors;
+    public long dropped;
+    public List<EndpointResult> endpoints = new ArrayList<>();
+    public List<ScriptResult> scripts = new ArrayList<>();
+  }
+
+  public static class EndpointResult {
+
+    public String method;
+    public String template;
+    public Map<Integer, Long> statuses;
+    public long[] latency;
+  }
+
+  public static class ScriptResult {
+
+    public String name;
+    public long failures;
+    public long[] duration;
+  }
+
+  // A socket speaking the protocol
+  public static class Channel implements AutoCloseable {
+
+    private static final Gson gson = new Gson();
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    public Channel(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+      this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+    }
+
+    // Synchronized: the agent's heartbeat shares the channel
+    public synchronized void send(Message message) throws IOException {
+      out.write(gson.toJson(message));
+      out.write('\n');
+      out.flush();
+    }
+
+    // Next message but heartbeats, an error message is thrown as IOException
+    public Message receive(String expected) throws IOException {
+      Message message;
+      do {
+        String line;
+        try {
+          line = in.readLine();
+        } catch (SocketTimeoutException e) {
+          throw new IOException("No message from " + socket.getRemoteSocketAddress()
+              + " for " + socket.getSoTimeout() / 1000 + "s", e);
+        }
+        if (line == null) {
+          throw new IOException("Connection closed by " + socket.getRemoteSocketAddress());
+        }
+        message = gson.fromJson(line, Message.class);
+      } while (HEARTBEAT.equals(message.type));
+      if (ERROR.equals(message.type)) {
+        throw new IOException(message.error);
+      }
+      if (!expected.equals(message.type)) {
+        throw new IOException("Expected " + expected + " but got " + message.type);
+      }
+      return message;
+    }
+
+    public String getRemoteAddress() {
+      return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    // 0 = wait forever
+    public void setReadTimeout(int ms) throws IOException {
+      socket.setSoTimeout(ms);
+    }
+
+    @Override
+    public void close() {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
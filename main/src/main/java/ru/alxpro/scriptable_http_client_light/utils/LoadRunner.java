@@ -0,0 +1,426 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static ru.alxpro.scriptable_http_client_light.utils.FileUtils.getNameWithoutExt;
+import static ru.alxpro.scriptable_http_client_light.utils.ScriptLoader.SCRIPT_KEY;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import ru.alxpro.scriptable_http_client_light.script.SharedContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Closed model: N virtual users each run the scripts back to back until the duration or
+// the iteration count is reached. Open model (setArrivalRate): iterations start on a
+// schedule whatever earlier ones take, on at most N workers; an arrival that finds every
+// worker busy is dropped, and latency counts from the scheduled start, so a slow server
+// can't hide behind fewer requests. Iterations started within the warm-up are not counted.
+// Each iteration runs on a worker of the engine pool, isolated from concurrent ones
+public class LoadRunner implements LoadStats {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadRunner.class);
+  private static final long PROGRESS_MS = 10_000;
+  private final ScriptLoader loader;
+  private final List<ScriptLoader.ScriptEntry> entries;
+  private final SharedContext context;
+  private final EnginePool pool;
+  private final MetricsRegistry metrics;
+  private final int vus;
+  private final long durationMs;
+  private final long rampUpMs;
+  private final long warmUpMs;
+  private final long iterations;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  // Open model, null = closed model
+  private List<Stage> stages;
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicInteger active = new AtomicInteger();
+  private volatile boolean measuring;
+  private volatile boolean stopped;
+  private long measureStart;
+  // Polled about once a second while measuring, true stops the run early
+  private BooleanSupplier abortCheck;
+  private boolean virtualThreads;
+  private long nextAbortCheck;
+
+  // durationMs = 0: run until iterations; iterations = 0: run until durationMs
+  public LoadRunner(
+      ScriptLoader loader, List<ScriptLoader.ScriptEntry> entries, SharedContext context,
+      EnginePool pool, MetricsRegistry metrics, int vus, long durationMs, long rampUpMs,
+      long warmUpMs, long iterations
+  ) {
+    this.loader = loader;
+    this.entries = entries;
+    this.context = context;
+    this.pool = pool;
+    this.metrics = metrics;
+    this.vus = Math.max(1, vus);
+    this.durationMs = durationMs;
+    this.rampUpMs = rampUpMs;
+    this.warmUpMs = warmUpMs;
+    this.iterations = iterations;
+  }
+
+  // VUs and arrival workers on virtual threads, for far more concurrent sessions than
+  // platform threads allow; false when the runtime lacks them
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = VirtualThreads.resolve(virtualThreads, "Load");
+  }
+
+  public void setAbortCheck(BooleanSupplier abortCheck) {
+    this.abortCheck = abortCheck;
+  }
+
+  private void checkAbort(long now) {
+    if (abortCheck != null && measuring && now >= nextAbortCheck) {
+      nextAbortCheck = now + 1000;
+      if (abortCheck.getAsBoolean()) {
+        log.warn("Load aborted");
+        stopped = true;
+      }
+    }
+  }
+
+  private long iterationLimit() {
+    // Closed model with neither limit given: every VU runs once
+    return stages == null && durationMs <= 0 && iterations <= 0 ? vus : iterations;
+  }
+
+  // Arrival rate moves linearly from the previous stage's target to this one
+  public static class Stage {
+
+    final long durationMs;
+    final double target;
+
+    public Stage(long durationMs, double target) {
+      this.durationMs = durationMs;
+      this.target = target;
+    }
+  }
+
+  // "30s:100,1m:500,30s:0" = ramp to 100/s over 30s, to 500/s over 1m, down to 0
+  public static List<Stage> parseStages(String value) {
+    List<Stage> result = new ArrayList<>();
+    for (String part : value.split(",")) {
+      String[] kv = part.trim().split(":");
+      if (kv.length != 2) {
+        throw new IllegalArgumentException("Invalid stage: " + part);
+      }
+      result.add(new Stage(parseDuration(kv[0]), Double.parseDouble(kv[1].trim())));
+    }
+    return result;
+  }
+
+  // Switches to the open model: startRate (per second) held for the duration, then stages.
+  // With an iteration count the last rate is held until the count is reached
+  public void setArrivalRate(double startRate, List<Stage> rampStages) {
+    List<Stage> all = new ArrayList<>();
+    if (startRate > 0 && durationMs > 0) {
+      all.add(new Stage(0, startRate));
+      all.add(new Stage(durationMs, startRate));
+    } else {
+      all.add(new Stage(0, startRate));
+    }
+    all.addAll(rampStages);
+    stages = all;
+  }
+
+  // 500ms, 30s, 5m, 1h; a plain number is seconds
+  public static long parseDuration(String value) {
+    if (value == null || value.isBlank()) {
+      return 0;
+    }
+    String v = value.trim().toLowerCase();
+    try {
+      if (v.endsWith("ms")) {
+        return Long.parseLong(v.substring(0, v.length() - 2));
+      }
+      long unit;
+      switch (v.charAt(v.length() - 1)) {
+        case 's':
+          unit = 1000;
+          break;
+        case 'm':
+          unit = 60_000;
+          break;
+        case 'h':
+          unit = 3_600_000;
+          break;
+        default:
+          return Long.parseLong(v) * 1000;
+      }
+      return (long) (Double.parseDouble(v.substring(0, v.length() - 1)) * unit);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid duration: " + value);
+    }
+  }
+
+  public String getLabel() {
+    if (stages != null) {
+      StringBuilder sb = new StringBuilder("arrival rate");
+      for (Stage s : stages) {
+        sb.append(s.durationMs == 0 ? " " : " -" + s.durationMs / 1000 + "s-> ")
+            .append(s.target).append("/s");
+      }
+      if (iterationLimit() > 0) {
+        sb.append(", ").append(iterationLimit()).append(" iterations");
+      }
+      return String.format("%s, max %d workers, warm-up %ds", sb, vus, warmUpMs / 1000);
+    }
+    return String.format("%d VUs, %s, ramp-up %ds, warm-up %ds", vus,
+        durationMs > 0 ? durationMs / 1000 + "s" : iterationLimit() + " iterations",
+        rampUpMs / 1000, warmUpMs / 1000);
+  }
+
+  // Blocks until every iteration has finished, returns true when none failed
+  public boolean run() {
+    log.info("=== Load Started: {} ===", getLabel());
+    if (stages != null) {
+      runArrivalRate();
+    } else if (!runClosed()) {
+      return false;
+    }
+    log.info("=== Load Finished ===\n{}", report());
+    return errors.sum() == 0;
+  }
+
+  private boolean runClosed() {
+    long start = System.currentTimeMillis();
+    long deadline = durationMs > 0 ? start + durationMs : Long.MAX_VALUE;
+    measuring = warmUpMs <= 0;
+    measureStart = start;
+    List<Thread> threads = new ArrayList<>();
+    ThreadFactory factory = VirtualThreads.factory("vu-", virtualThreads);
+    for (int i = 0; i < vus; i++) {
+      long delay = rampUpMs * i / vus;
+      Thread t = factory.newThread(() -> vu(start + delay, deadline));
+      threads.add(t);
+      t.start();
+    }
+    long nextProgress = start + PROGRESS_MS;
+    for (Thread t : threads) {
+      while (t.isAlive()) {
+        long now = System.currentTimeMillis();
+        if (!measuring && now >= start + warmUpMs) {
+          startMeasuring(now);
+        }
+        checkAbort(now);
+        if (now >= nextProgress) {
+          log.info("Load: {} VUs active, {} iterations, {} errors",
+              active.get(), latency.getCount(), errors.sum());
+          nextProgress += PROGRESS_MS;
+        }
+        try {
+          t.join(Math.min(1000, Math.max(1, nextProgress - now)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          stopped = true;
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Arrivals are scheduled on the calling thread; a worker picks each one up at once or
+  // the arrival is dropped, there is no queue to wait in
+  private void runArrivalRate() {
+    ThreadPoolExecutor workers = new ThreadPoolExecutor(vus, vus, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), VirtualThreads.factory("arrival-", virtualThreads));
+    workers.prestartAllCoreThreads();
+    long totalMs = 0;
+    for (Stage s : stages) {
+      totalMs += s.durationMs;
+    }
+    long start = System.nanoTime();
+    measuring = warmUpMs <= 0;
+    measureStart = System.currentTimeMillis();
+    long nextProgress = PROGRESS_MS;
+    long limit = iterationLimit();
+    boolean untilLimit = limit > 0 && stages.get(stages.size() - 1).target > 0;
+    // Arrivals due by the end of each millisecond are the integral of the rate; the ones
+    // falling into a millisecond are spread evenly over it. The schedule never runs ahead of
+    // the clock, so stages without arrivals (a closing "30s:0") still take their time
+    double due = 0;
+    long issued = 0;
+    schedule:
+    for (long ms = 0; (ms < totalMs || untilLimit) && !stopped; ms++) {
+      long ahead = start + ms * 1_000_000 - System.nanoTime();
+      if (ahead > 0) {
+        LockSupport.parkNanos(ahead);
+      }
+      long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+      if (!measuring && elapsedMs >= warmUpMs) {
+        startMeasuring(System.currentTimeMillis());
+      }
+      if (ms % 1000 == 0) {
+        checkAbort(System.currentTimeMillis());
+      }
+      if (elapsedMs >= nextProgress) {
+        log.info("Load: {} busy workers, {} iterations, {} errors, {} dropped",
+            workers.getActiveCount(), latency.getCount(), errors.sum(), dropped.sum());
+        nextProgress += PROGRESS_MS;
+      }
+      double after = due + rateAt(ms + 0.5) / 1000;
+      while (issued + 1 <= after) {
+        issued++;
+        // Only executed arrivals use up the count, dropped ones do not
+        if (measuring && limit > 0 && started.get() >= limit) {
+          break schedule;
+        }
+        long intended = start + ms * 1_000_000
+            + (long) ((issued - due) / (after - due) * 1_000_000);
+        long wait = intended - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+        boolean counted = measuring;
+        try {
+          workers.execute(() -> iteration(intended, counted));
+          if (counted) {
+            started.incrementAndGet();
+          }
+        } catch (RejectedExecutionException e) {
+          if (counted) {
+            dropped.increment();
+          }
+        }
+      }
+      due = after;
+    }
+    workers.shutdown();
+    try {
+      while (!workers.awaitTermination(PROGRESS_MS, TimeUnit.MILLISECONDS)) {
+        log.info("Load: waiting for {} iterations to finish", workers.getActiveCount());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Target rate (per second) at the given time since start
+  private double rateAt(double elapsedMs) {
+    double from = 0;
+    long stageStart = 0;
+    for (Stage s : stages) {
+      if (elapsedMs < stageStart + s.durationMs) {
+        return from + (s.target - from) * (elapsedMs - stageStart) / s.durationMs;
+      }
+      from = s.target;
+      stageStart += s.durationMs;
+    }
+    return from;
+  }
+
+  // Warm-up is over: HTTP stats restart with the measured phase
+  private synchronized void startMeasuring(long now) {
+    if (!measuring) {
+      metrics.reset();
+      measureStart = now;
+      measuring = true;
+      log.info("Warm-up finished, measuring");
+    }
+  }
+
+  private void vu(long startAt, long deadline) {
+    long wait = startAt - System.currentTimeMillis();
+    if (wait > 0) {
+      try {
+        Thread.sleep(wait);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+    active.incrementAndGet();
+    try {
+      while (!stopped && System.currentTimeMillis() < deadline) {
+        // Warm-up iterations do not use up the iteration count
+        long limit = iterationLimit();
+        if (measuring && limit > 0 && started.incrementAndGet() > limit) {
+          break;
+        }
+        iteration(System.nanoTime(), measuring);
+      }
+    } finally {
+      active.decrementAndGet();
+    }
+  }
+
+  // start: when the iteration was meant to begin, latency is measured from there
+  private void iteration(long start, boolean counted) {
+    boolean ok = true;
+    try (EnginePool.Worker worker = pool.acquire()) {
+      for (ScriptLoader.ScriptEntry entry : entries) {
+        // Per thread: other VUs may be running other scripts
+        context.putLocal(SCRIPT_KEY, getNameWithoutExt(entry.name));
+        // A JS logger error fails the iteration as it fails a batch
+        EnginePool.Execution execution = loader.run(entry, worker);
+        if (!execution.success) {
+          log.debug("Iteration of {} failed: {}", entry.name, execution.error);
+          ok = false;
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      context.removeLocal(SCRIPT_KEY);
+    }
+    if (counted && measuring) {
+      latency.record((System.nanoTime() - start) / 1000);
+      if (!ok) {
+        errors.increment();
+      }
+    }
+  }
+
+  @Override
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  // Milliseconds since the measured phase started
+  public long getMeasuredMs() {
+    return System.currentTimeMillis() - measureStart;
+  }
+
+  public String report() {
+    return report(getLabel(), getMeasuredMs(), this, metrics);
+  }
+
+  static String report(String label, long measuredMs, LoadStats stats, MetricsRegistry metrics) {
+    double seconds = Math.max(0.001, measuredMs / 1000.0);
+    LatencyHistogram latency = stats.getLatency();
+    long count = latency.getCount();
+    long failed = stats.getErrors();
+    return String.format("Load: %s%n", label)
+        + String.format("Iterations: %d (%.2f/s), errors: %d (%.2f%%), dropped: %d%n", count,
+        count / seconds, failed, count == 0 ? 0 : 100.0 * failed / count, stats.getDropped())
+        + String.format("Iteration time: p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+        latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0,
+        latency.getPercentile(99) / 1000.0, latency.getMax() / 1000.0)
+        + metrics.format();
+  }
+}
@@ -0,0 +1,11 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+// Measured iterations of a load run, local (LoadRunner) or merged from agents
+public interface LoadStats {
+
+  LatencyHistogram getLatency();
+
+  long getErrors();
+
+  long getDropped();
+}
@@ -0,0 +1,332 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Latency and status counts per "METHOD url-template" of every client call, plus token
+// refreshes, script runs and gauges read on demand (pool, dispatcher).
+// Calls look their endpoint up by the raw URL first, so repeated URLs record without
+// building a template or key; URLs that carry ids still pay for templateOf once the
+// lookup cache is full
+public class MetricsRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+  private static final String OTHER = "{other}";
+  // Raw URLs remembered by endpoint(), beyond that lookups go through templateOf
+  private static final int MAX_RESOLVED_URLS = 10_000;
+  // Path segments that identify a resource rather than an endpoint
+  private static final Pattern ID = Pattern.compile(
+      "\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F-]{27}|(?=.*\\d)[0-9a-fA-F]{16,}");
+  private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+  // Raw URL to the endpoints resolved for it, replaced by reset() so a lookup that raced
+  // with it can only fill the discarded map
+  private volatile ConcurrentMap<String, Resolved> resolved = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ScriptRuns> scripts = new ConcurrentHashMap<>();
+  private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+  private final LongAdder tokenRefreshes = new LongAdder();
+  private final LongAdder tokenFailures = new LongAdder();
+  private final int maxEndpoints;
+  private volatile long since = System.nanoTime();
+
+  public MetricsRegistry(int maxEndpoints) {
+    this.maxEndpoints = maxEndpoints;
+  }
+
+  public static class Endpoint {
+
+    public final String method;
+    public final String template;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Index is the status code, 0 = no response (exception)
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+
+    Endpoint(String method, String template) {
+      this.method = method;
+      this.template = template;
+    }
+
+    public void record(int status, long nanos) {
+      latency.record(nanos / 1000);
+      statuses.incrementAndGet(status > 0 && status < 600 ? status : 0);
+    }
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    // Non-zero counts by status code
+    public Map<Integer, Long> getStatuses() {
+      Map<Integer, Long> map = new TreeMap<>();
+      for (int i = 0; i < statuses.length(); i++) {
+        long c = statuses.get(i);
+        if (c != 0) {
+          map.put(i, c);
+        }
+      }
+      return map;
+    }
+
+    // Exceptions and 5xx
+    public long getErrors() {
+      long errors = statuses.get(0);
+      for (int i = 500; i < 600; i++) {
+        errors += statuses.get(i);
+      }
+      return errors;
+    }
+  }
+
+  public static class ScriptRuns {
+
+    public final String name;
+    private final LatencyHistogram duration = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    ScriptRuns(String name) {
+      this.name = name;
+    }
+
+    public LatencyHistogram getDuration() {
+      return duration;
+    }
+
+    public long getFailures() {
+      return failures.sum();
+    }
+  }
+
+  public static class Gauge {
+
+    public final String help;
+    private final DoubleSupplier value;
+
+    Gauge(String help, DoubleSupplier value) {
+      this.help = help;
+      this.value = value;
+    }
+
+    public double get() {
+      return value.getAsDouble();
+    }
+  }
+
+  // Endpoints of one raw URL by method and SOAP operation, usually a single entry
+  private static final class Resolved {
+
+    final String method;
+    final String operation;
+    final Endpoint endpoint;
+    final Resolved next;
+
+    Resolved(String method, String operation, Endpoint endpoint, Resolved next) {
+      this.method = method;
+      this.operation = operation;
+      this.endpoint = endpoint;
+      this.next = next;
+    }
+
+    Endpoint find(String method, String operation) {
+      for (Resolved r = this; r != null; r = r.next) {
+        if (r.method.equals(method) && Objects.equals(r.operation, operation)) {
+          return r.endpoint;
+        }
+      }
+      return null;
+    }
+  }
+
+  // operation: SOAP operation name, appended to the template
+  public Endpoint endpoint(String method, String url, String operation) {
+    ConcurrentMap<String, Resolved> cache = resolved;
+    Resolved known = cache.get(url);
+    Endpoint endpoint = known != null ? known.find(method, operation) : null;
+    if (endpoint != null) {
+      return endpoint;
+    }
+    endpoint = resolve(method, url, operation);
+    if (known != null || cache.size() < MAX_RESOLVED_URLS) {
+      Endpoint found = endpoint;
+      cache.compute(url, (k, r) -> r != null && r.find(method, operation) != null
+          ? r : new Resolved(method, operation, found, r));
+    }
+    return endpoint;
+  }
+
+  private Endpoint resolve(String method, String url, String operation) {
+    String template = operation != null ? templateOf(url) + "#" + operation : templateOf(url);
+    String key = method + " " + template;
+    Endpoint endpoint = endpoints.get(key);
+    if (endpoint != null) {
+      return endpoint;
+    }
+    if (endpoints.size() >= maxEndpoints) {
+      // Templates that still carry ids must not grow the registry without bound
+      if (endpoints.putIfAbsent(method + " " + OTHER, new Endpoint(method, OTHER)) == null) {
+        log.warn("More than {} endpoints, the rest are counted as {}", maxEndpoints, OTHER);
+      }
+      return endpoints.get(method + " " + OTHER);
+    }
+    return endpoints.computeIfAbsent(key, k -> new Endpoint(method, template));
+  }
+
+  // scheme://host:port/path with query dropped and id-like segments replaced by {id}
+  static String templateOf(String url) {
+    int end = url.length();
+    int q = url.indexOf('?');
+    if (q >= 0) {
+      end = q;
+    }
+    int f = url.indexOf('#');
+    if (f >= 0 && f < end) {
+      end = f;
+    }
+    int scheme = url.indexOf("://");
+    int pathStart = url.indexOf('/', scheme >= 0 ? scheme + 3 : 0);
+    if (pathStart < 0 || pathStart >= end) {
+      return url.substring(0, end);
+    }
+    StringBuilder sb = new StringBuilder(end);
+    sb.append(url, 0, pathStart);
+    int i = pathStart;
+    while (i < end) {
+      int next = url.indexOf('/', i + 1);
+      if (next < 0 || next > end) {
+        next = end;
+      }
+      String segment = url.substring(i + 1, next);
+      sb.append('/').append(ID.matcher(segment).matches() ? "{id}" : segment);
+      i = next;
+    }
+    return sb.toString();
+  }
+
+  public Map<String, Endpoint> getEndpoints() {
+    return new TreeMap<>(endpoints);
+  }
+
+  // Live views for exporters, iterated without copying
+  public Collection<Endpoint> endpoints() {
+    return endpoints.values();
+  }
+
+  public Collection<ScriptRuns> scripts() {
+    return scripts.values();
+  }
+
+  public Map<String, Gauge> gauges() {
+    return gauges;
+  }
+
+  public void gauge(String name, String help, DoubleSupplier value) {
+    gauges.put(name, new Gauge(help, value));
+  }
+
+  public void tokenRefresh(boolean ok) {
+    (ok ? tokenRefreshes : tokenFailures).increment();
+  }
+
+  public long getTokenRefreshes() {
+    return tokenRefreshes.sum();
+  }
+
+  public long getTokenFailures() {
+    return tokenFailures.sum();
+  }
+
+  public void recordScript(String name, boolean ok, long nanos) {
+    ScriptRuns runs = scripts.computeIfAbsent(name, ScriptRuns::new);
+    runs.duration.record(nanos / 1000);
+    if (!ok) {
+      runs.failures.increment();
+    }
+  }
+
+  // Adds calls recorded by another process, e.g. a load agent
+  public void merge(
+      String method, String template, LatencyHistogram latency, Map<Integer, Long> statuses
+  ) {
+    Endpoint e = endpoints.computeIfAbsent(method + " " + template,
+        k -> new Endpoint(method, template));
+    e.latency.add(latency);
+    // Out of range codes count as no response, as in Endpoint.record
+    statuses.forEach((status, count) -> e.statuses.addAndGet(
+        status != null && status > 0 && status < 600 ? status : 0, count));
+  }
+
+  public void mergeScript(String name, LatencyHistogram duration, long failures) {
+    ScriptRuns runs = scripts.computeIfAbsent(name, ScriptRuns::new);
+    runs.duration.add(duration);
+    runs.failures.add(failures);
+  }
+
+  public double getUptimeSeconds() {
+    return (System.nanoTime() - since) / 1e9;
+  }
+
+  public void reset() {
+    endpoints.clear();
+    resolved = new ConcurrentHashMap<>();
+    scripts.clear();
+    since = System.nanoTime();
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    double seconds = getUptimeSeconds();
+    getEndpoints().forEach((key, e) -> {
+      LatencyHistogram h = e.getLatency();
+      Map<String, Object> s = new LinkedHashMap<>();
+      s.put("count", h.getCount());
+      s.put("errors", e.getErrors());
+      s.put("rps", seconds > 0 ? h.getCount() / seconds : 0);
+      s.put("p50", h.getPercentile(50) / 1000.0);
+      s.put("p90", h.getPercentile(90) / 1000.0);
+      s.put("p99", h.getPercentile(99) / 1000.0);
+      s.put("max", h.getMax() / 1000.0);
+      s.put("statuses", e.getStatuses());
+      stats.put(key, s);
+    });
+    return stats;
+  }
+
+  // Table of latency percentiles (ms) and throughput since start or reset
+  public String format() {
+    Map<String, Endpoint> all = getEndpoints();
+    if (all.isEmpty()) {
+      return "(No requests)\n";
+    }
+    int width = "Endpoint".length();
+    for (String key : all.keySet()) {
+      width = Math.max(width, key.length());
+    }
+    String row = "%-" + width + "s %7s %6s %8s %9s %9s %9s %9s  %s%n";
+    double seconds = getUptimeSeconds();
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(row,
+        "Endpoint", "Count", "Errors", "Req/s", "p50", "p90", "p99", "max", "Statuses"));
+    all.forEach((key, e) -> {
+      LatencyHistogram h = e.getLatency();
+      sb.append(String.format(row, key, h.getCount(), e.getErrors(),
+          String.format("%.2f", seconds > 0 ? h.getCount() / seconds : 0),
+          ms(h.getPercentile(50)), ms(h.getPercentile(90)), ms(h.getPercentile(99)),
+          ms(h.getMax()), e.getStatuses()));
+    });
+    return sb.toString();
+  }
+
+  private static String ms(long micros) {
+    return String.format("%.1fms", micros / 1000.0);
+  }
+}
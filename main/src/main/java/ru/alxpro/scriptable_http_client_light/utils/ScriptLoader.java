@@ -15,7 +15,13 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -26,14 +32,31 @@ import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import org.openjdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import ru.alxpro.scriptable_http_client_light.Main;
+import ru.alxpro.scriptable_http_client_light.script.AppConfig;
+import ru.alxpro.scriptable_http_client_light.script.JFuture;
+import ru.alxpro.scriptable_http_client_light.script.JsLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ScriptLoader {
 
   private static final Logger log = LoggerFactory.getLogger(ScriptLoader.class);
-  private final Map<String, ScriptEntry> scriptMap = new ConcurrentHashMap<>();
+  private final Map<String, ScriptSource> scriptMap = new ConcurrentHashMap<>();
   private final ScriptEngine engine;
+  private final MetricsRegistry metrics;
+  private final Map<String, Object> services;
+  private final int compileThreads;
+  // Null with script.codeCache=false
+  private final File codeCacheDir;
+  // Compiled scripts in the code cache when the folder was scanned, see countCachedScripts
+  private volatile long cachedAtLoad;
+  // The engine's own global: scenario evaluation on compiler threads, batch and CLI runs.
+  // Not synchronized, a run may block on I/O for long
+  private final ReentrantLock globalLock = new ReentrantLock();
+  // Compiles the whole folder in the background, see init()
+  private ExecutorService compiler;
   private Thread watcherThread;
   private volatile boolean running = true;
   private final Pattern numPattern = Pattern.compile("^(\\d+)");
@@ -65,6 +88,13 @@ public class ScriptLoader {
           ")"
   );
 
+  // Literal scenario name, so that listing scripts does not need to compile them:
+  // getScenarioName: function() { return "Name"; } or function getScenarioName() {...}
+  private static final Pattern NAME_PATTERN = Pattern.compile(
+      "(?:\\bgetScenarioName\\s*[:=]\\s*function\\s*|function\\s+getScenarioName\\s*)"
+          + "\\(\\s*\\)\\s*\\{\\s*return\\s+([\"'])(.*?)\\1"
+  );
+
   public static final String SCRIPT_KEY = "SCRIPT_KEY";
 
   public interface Scenario {
@@ -74,49 +104,211 @@ public class ScriptLoader {
     }
 
     void runScenario() throws ScriptException;
+
+    // Threshold expressions checked at the end of a batch or load run, see Thresholds
+    default List<String> getThresholds() {
+      return null;
+    }
   }
 
   public static class ScriptEntry {
 
     public final String key;
     public final String name;
+    // Evaluated in the engine's own global, for batch and CLI runs
     public final Scenario scenario;
+    // Source for other globals, see EnginePool
+    final CompiledScript compiled;
+    final boolean isScenario;
+    // Read once, listing scripts must not call into the global while a script runs
+    private final String scenarioName;
 
-    public ScriptEntry(String key, String name, Scenario scenario) {
+    public ScriptEntry(
+        String key, String name, Scenario scenario, CompiledScript compiled, boolean isScenario
+    ) {
       this.key = key;
       this.name = name;
       this.scenario = scenario;
+      this.compiled = compiled;
+      this.isScenario = isScenario;
+      this.scenarioName = scenario.getScenarioName();
+    }
+
+    @Override
+    public String toString() {
+      return describe(key, name, scenarioName);
+    }
+  }
+
+  // A scanned file, compiled by the first get(key) or by a compiler thread
+  private class ScriptSource {
+
+    final String key;
+    final String name;
+    final String content;
+    // Read from the source text, until the script is compiled
+    final String scenarioName;
+    final FutureTask<ScriptEntry> task;
+    volatile long compileNanos;
+    // Set when the script does not compile or evaluate
+    volatile String error;
+
+    ScriptSource(String key, String name, String content) {
+      this.key = key;
+      this.name = name;
+      this.content = content;
+      this.scenarioName = findScenarioName(content);
+      this.task = new FutureTask<>(() -> compile(this));
+    }
+
+    // Null when the script does not compile
+    ScriptEntry get() {
+      // No-op when a compiler thread got there first, get() then waits for it
+      task.run();
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException e) {
+        return null;
+      }
+    }
+
+    // On a compiler thread: nobody waits for the result, errors are reported here
+    void precompile() {
+      task.run();
+      if (error != null) {
+        log.error("Error loading {}: {}", name, error);
+      }
     }
 
     @Override
     public String toString() {
-      String sn = scenario.getScenarioName();
-      return String.format(sn != null ? "[%s] %s \"" + sn + "\"" : "[%s] %s", key, name);
+      ScriptEntry entry = task.isDone() ? get() : null;
+      return entry != null ? entry.toString() : describe(key, name, scenarioName);
     }
   }
 
-  public ScriptLoader(ServiceRegistry registry) {
-    var manager = new ScriptEngineManager();
-    this.engine = manager.getEngineByName("javascript");
+  private static String describe(String key, String name, String scenarioName) {
+    return String.format(
+        scenarioName != null ? "[%s] %s \"" + scenarioName + "\"" : "[%s] %s", key, name);
+  }
+
+  public ScriptLoader(ServiceRegistry registry, MetricsRegistry metrics) {
+    this.metrics = metrics;
+    this.services = registry.getServices();
+    AppConfig config = registry.getService("config");
+    boolean codeCache = config != null
+        && Boolean.parseBoolean(config.get(AppConfig.SCRIPT_CODE_CACHE, "true"));
+    this.compileThreads = config != null ? config.getInt(AppConfig.SCRIPT_COMPILE_THREADS, 2) : 0;
+    long start = System.nanoTime();
+    this.codeCacheDir = codeCache ? new File(Main.getDataDir(), "nashorn-cache") : null;
+    this.engine = newEngine(codeCacheDir);
     if (this.engine == null) {
       log.error("CRITICAL: JS Engine Nashorn not found.");
       System.exit(1);
     }
+    log.info("JS engine started in {} ms (code cache {})",
+        (System.nanoTime() - start) / 1_000_000, codeCache ? "on" : "off");
     registry.getServices().forEach(engine::put);
   }
 
-  public void init(String scriptsPath) {
+  // The persistent code cache stores each compiled script under a hash of its source, in
+  // a directory named after the Nashorn build: edits and engine upgrades simply miss
+  private static ScriptEngine newEngine(File dir) {
+    if (dir == null) {
+      return new ScriptEngineManager().getEngineByName("javascript");
+    }
+    System.setProperty("nashorn.persistent.code.cache", dir.getAbsolutePath());
+    return new NashornScriptEngineFactory().getScriptEngine("--persistent-code-cache");
+  }
+
+  // precompile: compile every script in the background (interactive use), otherwise
+  // scripts are only compiled by get()
+  public void init(String scriptsPath, boolean precompile) {
     File scriptsDir = new File(scriptsPath);
     if (!scriptsDir.exists() && !scriptsDir.mkdirs()) {
       log.error("Could not create scripts dir: {}", scriptsPath);
       return;
     }
+    if (precompile && compileThreads > 0) {
+      compiler = Executors.newFixedThreadPool(compileThreads,
+          VirtualThreads.factory("script-compile-", false));
+    }
     loadAll(scriptsDir);
     startWatcher(scriptsPath);
   }
 
+  // Compiles the script on first use, null when missing or broken, see getError()
   public ScriptEntry get(String key) {
-    return scriptMap.get(key);
+    ScriptSource source = scriptMap.get(key);
+    return source != null ? source.get() : null;
+  }
+
+  // Why get(key) returned null: the compile or evaluation error, null for an unknown key
+  public String getError(String key) {
+    ScriptSource source = scriptMap.get(key);
+    return source != null ? source.error : null;
+  }
+
+  // Runs the scenario in the engine's own global and records its duration by file name;
+  // the shared JS logger's error flag is reset first and tells whether the run failed
+  public void run(ScriptEntry entry) throws ScriptException {
+    globalLock.lock();
+    try {
+      JsLogger logger = (JsLogger) services.get("logger");
+      logger.reset();
+      run(entry, entry.scenario, logger);
+    } finally {
+      globalLock.unlock();
+    }
+  }
+
+  // Runs the scenario in the worker's global; safe alongside runs on other workers
+  public EnginePool.Execution run(ScriptEntry entry, EnginePool.Worker worker) {
+    JsLogger logger = worker.getLogger();
+    logger.reset();
+    long start = System.nanoTime();
+    String error = null;
+    try {
+      run(entry, worker.scenario(entry), logger);
+      if (logger.hasError()) {
+        error = "Script reported errors via JS logger";
+      }
+    } catch (Exception e) {
+      error = e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+    return new EnginePool.Execution(error == null, error, System.nanoTime() - start);
+  }
+
+  private void run(ScriptEntry entry, Scenario scenario, JsLogger logger)
+      throws ScriptException {
+    JfrEvents.ScriptRun event = new JfrEvents.ScriptRun();
+    event.begin();
+    long start = System.nanoTime();
+    boolean ok = false;
+    try {
+      scenario.runScenario();
+      JFuture.runPending();
+      // logger.error() fails the run like an exception does
+      ok = !logger.hasError();
+    } finally {
+      JFuture.clearPending();
+      String script = getNameWithoutExt(entry.name);
+      metrics.recordScript(script, ok, System.nanoTime() - start);
+      event.end();
+      if (event.shouldCommit()) {
+        event.script = script;
+        event.success = ok;
+        event.commit();
+      }
+    }
+  }
+
+  // Workers with their own globals over this loader's compiled scripts
+  public EnginePool newPool(int maxSize) {
+    return new EnginePool(engine, services, maxSize);
   }
 
   public List<String> getAvailableScriptsList() {
@@ -145,19 +337,78 @@ public class ScriptLoader {
     if (watcherThread != null) {
       watcherThread.interrupt();
     }
+    if (compiler != null) {
+      compiler.shutdownNow();
+    }
   }
 
+  // Scans the folder, compiling is left to get() and the compiler threads
   public void loadAll(File scriptsDir) {
     scriptMap.clear();
+    long start = System.nanoTime();
+    cachedAtLoad = countCachedScripts();
     FilenameFilter flt = (d, n) -> n.toLowerCase().endsWith(".js");
     File[] files = scriptsDir.listFiles(flt);
+    List<ScriptSource> sources = new ArrayList<>();
     if (files != null) {
       for (File f : files) {
-        loadFile(f);
+        ScriptSource source = loadFile(f);
+        if (source != null) {
+          sources.add(source);
+        }
       }
     }
-    Stream<String> s = scriptMap.values().stream().map(ScriptEntry::toString);
+    Stream<String> s = scriptMap.values().stream().map(ScriptSource::toString);
     log.info("Loaded Scripts: {}", s.collect(Collectors.joining(", ")));
+    log.info("{} scripts scanned in {} ms", sources.size(),
+        (System.nanoTime() - start) / 1_000_000);
+    if (compiler != null && !sources.isEmpty()) {
+      CompletableFuture<?>[] tasks = sources.stream()
+          .map(source -> CompletableFuture.runAsync(source::precompile, compiler))
+          .toArray(CompletableFuture[]::new);
+      CompletableFuture.allOf(tasks).thenRun(() -> log.info(
+          "{} scripts compiled in {} ms on {} threads ({})", sources.size(),
+          (System.nanoTime() - start) / 1_000_000, compileThreads, compileSummary()));
+    }
+  }
+
+  // Batch and load runs compile on first use: Main logs this once their scripts are loaded
+  public void logCompileSummary() {
+    log.info("Scripts compiled: {}", compileSummary());
+  }
+
+  // Compile time of the scripts compiled since the scan and the cache entries Nashorn stored
+  // meanwhile. Not a hit rate: Nashorn does not persist every script, so a compiled script
+  // without a new entry may just as well have skipped the cache
+  private String compileSummary() {
+    List<ScriptSource> compiled = scriptMap.values().stream()
+        .filter(it -> it.compileNanos > 0).collect(Collectors.toList());
+    String summary = String.format("%d, compile %d ms", compiled.size(),
+        compiled.stream().mapToLong(it -> it.compileNanos).sum() / 1_000_000);
+    if (codeCacheDir == null) {
+      return summary + ", code cache off";
+    }
+    long stored = Math.max(0, countCachedScripts() - cachedAtLoad);
+    return summary + String.format(", %d new code cache entries", stored);
+  }
+
+  // Nashorn stores each compiled script as <source hash>-script, next to per-function
+  // type files it adds while scripts run
+  private long countCachedScripts() {
+    if (codeCacheDir == null || !codeCacheDir.isDirectory()) {
+      return 0;
+    }
+    try (Stream<Path> files = Files.walk(codeCacheDir.toPath())) {
+      return files.filter(f -> f.getFileName().toString().endsWith("-script")).count();
+    } catch (Exception e) {
+      return 0;
+    }
+  }
+
+  private static String findScenarioName(String content) {
+    String clean = COMMENT_PATTERN.matcher(content).replaceAll("");
+    Matcher match = NAME_PATTERN.matcher(clean);
+    return match.find() ? match.group(2) : null;
   }
 
   private boolean isScenarioLookAlike(String content) {
@@ -180,27 +431,45 @@ public class ScriptLoader {
     return hasGetName && hasRun;
   }
 
-  private void loadFile(File file) {
+  private ScriptSource loadFile(File file) {
     String name = file.getName();
     try {
       Matcher match = numPattern.matcher(name);
       // Use regex group as key, otherwise use file name without ext
       String key = match.find() ? match.group(1) : getNameWithoutExt(name);
-      String content = Files.readString(file.toPath());
-      CompiledScript compiled = ((Compilable) engine).compile(content);
-      Scenario scenario = null;
-      if (isScenarioLookAlike(content)) {
-        Invocable invocable = (Invocable) engine;
-        scenario = invocable.getInterface(compiled.eval(), Scenario.class);
-        if (scenario != null) {
-          scriptMap.put(key, new ScriptEntry(key, name, scenario));
+      ScriptSource source = new ScriptSource(key, name, Files.readString(file.toPath()));
+      scriptMap.put(key, source);
+      return source;
+    } catch (Exception e) {
+      log.error("Error loading {}: {}", name, e.getMessage());
+      return null;
+    }
+  }
+
+  // Compiling is thread-safe, evaluating in the engine's global is not
+  private ScriptEntry compile(ScriptSource source) {
+    try {
+      long start = System.nanoTime();
+      CompiledScript compiled = ((Compilable) engine).compile(source.content);
+      source.compileNanos = System.nanoTime() - start;
+      log.debug("Compiled {} in {} ms", source.name,
+          String.format("%.1f", source.compileNanos / 1e6));
+      if (isScenarioLookAlike(source.content)) {
+        globalLock.lock();
+        try {
+          Scenario scenario =
+              ((Invocable) engine).getInterface(compiled.eval(), Scenario.class);
+          if (scenario != null) {
+            return new ScriptEntry(source.key, source.name, scenario, compiled, true);
+          }
+        } finally {
+          globalLock.unlock();
         }
       }
-      if (scenario == null) {
-        scriptMap.put(key, new ScriptEntry(key, name, compiled::eval));
-      }
+      return new ScriptEntry(source.key, source.name, compiled::eval, compiled, false);
     } catch (Exception e) {
-      log.error("Error loading {}: {}", name, e.getMessage());
+      source.error = e.getMessage() != null ? e.getMessage() : e.toString();
+      return null;
     }
   }
 
@@ -215,7 +484,10 @@ public class ScriptLoader {
             Path changed = (Path) event.context();
             if (changed.toString().endsWith(".js")) {
               log.info("File change detected: {}", changed);
-              loadFile(path.resolve(changed).toFile());
+              ScriptSource source = loadFile(path.resolve(changed).toFile());
+              if (source != null && compiler != null) {
+                compiler.execute(source::precompile);
+              }
             }
           }
           key.reset();
@@ -6,24 +6,67 @@ import jakarta.ws.rs.client.ClientRequestContext;
 import jakarta.ws.rs.client.ClientRequestFilter;
 import jakarta.ws.rs.client.ClientResponseContext;
 import jakarta.ws.rs.client.ClientResponseFilter;
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Slf4jLogFilter implements ClientRequestFilter, ClientResponseFilter {
 
   private static final Logger log = LoggerFactory.getLogger("HTTP");
+  // Request property: leave the response entity stream untouched (downloads)
+  public static final String SKIP_BODY = "slf4jLogFilter.skipBody";
+  private static final String SAMPLED_OUT = "slf4jLogFilter.sampledOut";
   private final int maxBodyLogSize;
+  private final int maxPerSecond;
+  private final AtomicLong second = new AtomicLong();
+  private final AtomicInteger logged = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
 
   public Slf4jLogFilter(int maxBodyLogSize) {
+    this(maxBodyLogSize, 0);
+  }
+
+  // maxPerSecond > 0: exchanges above this rate are counted, not logged
+  public Slf4jLogFilter(int maxBodyLogSize, int maxPerSecond) {
     this.maxBodyLogSize = maxBodyLogSize;
+    this.maxPerSecond = maxPerSecond;
+  }
+
+  private boolean sample() {
+    if (maxPerSecond <= 0) {
+      return true;
+    }
+    long now = System.currentTimeMillis() / 1000;
+    long current = second.get();
+    if (now != current && second.compareAndSet(current, now)) {
+      logged.set(0);
+      int count = skipped.getAndSet(0);
+      if (count > 0) {
+        log.info("({} requests not logged, log.maxPerSecond={})", count, maxPerSecond);
+      }
+    }
+    if (logged.incrementAndGet() <= maxPerSecond) {
+      return true;
+    }
+    skipped.incrementAndGet();
+    return false;
   }
 
   @Override
   public void filter(ClientRequestContext reqCtx) {
+    if (!log.isInfoEnabled()) {
+      return;
+    }
+    if (!sample()) {
+      reqCtx.setProperty(SAMPLED_OUT, true);
+      return;
+    }
     log.info("> {} {}", reqCtx.getMethod(), reqCtx.getUri());
     // Log Headers
     reqCtx.getStringHeaders().forEach((key, val) -> {
@@ -45,23 +88,89 @@ public class Slf4jLogFilter implements ClientRequestFilter, ClientResponseFilter
   @Override
   public void filter(ClientRequestContext reqCtx, ClientResponseContext rspCtx)
       throws IOException {
+    if (!log.isInfoEnabled() || reqCtx.getProperty(SAMPLED_OUT) != null) {
+      return;
+    }
     log.info("< {} {}", rspCtx.getStatus(), rspCtx.getStatusInfo());
     // Log Headers
     rspCtx.getHeaders().forEach((key, val) -> log.info("< {}: {}", key, val));
     // Log Body (Incoming)
-    if (rspCtx.hasEntity()) {
+    if (rspCtx.hasEntity() && reqCtx.getProperty(SKIP_BODY) != null) {
+      log.info("< Body: (streamed, not logged)");
+    } else if (rspCtx.hasEntity()) {
       InputStream stream = rspCtx.getEntityStream();
       if (stream != null) {
-        byte[] bytes = stream.readAllBytes();
-        String body;
-        if (bytes.length > maxBodyLogSize) {
-          body = new String(bytes, 0, maxBodyLogSize, UTF_8) + "...";
-        } else {
-          body = new String(bytes, UTF_8);
-        }
-        log.info("< Body: {}", body);
-        rspCtx.setEntityStream(new ByteArrayInputStream(bytes));
+        rspCtx.setEntityStream(new TeeInputStream(stream));
+      }
+    }
+  }
+
+  // Keeps the first maxBodyLogSize bytes as the consumer reads the body,
+  // logs them once at end of stream or close
+  private class TeeInputStream extends FilterInputStream {
+
+    private final byte[] prefix = new byte[maxBodyLogSize];
+    private int size;
+    private boolean truncated;
+    private boolean logged;
+
+    TeeInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        flush();
+      } else if (size < prefix.length) {
+        prefix[size++] = (byte) b;
+      } else {
+        truncated = true;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n < 0) {
+        flush();
+      } else if (n > 0) {
+        int copy = Math.min(n, prefix.length - size);
+        System.arraycopy(b, off, prefix, size, copy);
+        size += copy;
+        truncated |= copy < n;
+      }
+      return n;
+    }
+
+    // Re-reading after reset() would be captured twice
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes are not captured
+      truncated = true;
+      return in.skip(n);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+      super.close();
+    }
+
+    private void flush() {
+      if (logged) {
+        return;
       }
+      logged = true;
+      String body = new String(Arrays.copyOf(prefix, size), UTF_8);
+      log.info("< Body: {}", truncated ? body + "..." : body);
     }
   }
 }
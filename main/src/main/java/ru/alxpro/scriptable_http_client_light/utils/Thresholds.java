@@ -0,0 +1,204 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Pass/fail criteria checked against the recorded metrics, e.g.
+//   p95(http) < 300ms    errors < 1%    p99(soap:Add) < 50ms    max(iteration) < 2s
+// Aggregates: pNN, avg, max (ms or s), errors (% or ratio), count.
+// Selectors: http (all calls, the default), soap:<operation>, iteration (load mode),
+// script:<name>, or any text contained in the endpoint, e.g. "GET http://host/users".
+// A trailing "abortOnFail" stops the run as soon as the threshold is lost. A threshold
+// without data fails, so a mistyped selector can't pass unnoticed; iteration thresholds
+// are skipped outside load mode
+public class Thresholds {
+
+  private static final Logger log = LoggerFactory.getLogger(Thresholds.class);
+  private static final Pattern EXPR = Pattern.compile(
+      "\\s*(p\\d+(?:\\.\\d+)?|avg|max|errors|count)(?:\\((.*)\\))?\\s*(<=|>=|<|>)\\s*"
+          + "([\\d.]+)\\s*(ms|s|%)?\\s*(abortOnFail)?\\s*");
+  // Samples needed before a percentile or error rate can abort a run
+  private static final long ABORT_MIN_SAMPLES = 100;
+  private final List<Threshold> list = new ArrayList<>();
+
+  public static class Threshold {
+
+    final String expr;
+    final String aggregate;
+    final String selector;
+    final String op;
+    final double limit;
+    final boolean abortOnFail;
+
+    Threshold(String expr) {
+      Matcher m = EXPR.matcher(expr);
+      if (!m.matches()) {
+        throw new IllegalArgumentException("Invalid threshold: " + expr);
+      }
+      this.expr = expr.trim();
+      this.aggregate = m.group(1);
+      this.selector = m.group(2) != null ? m.group(2).trim() : "http";
+      this.op = m.group(3);
+      double value = Double.parseDouble(m.group(4));
+      String unit = m.group(5);
+      if ("s".equals(unit)) {
+        value *= 1000;
+      } else if ("%".equals(unit)) {
+        value /= 100;
+      }
+      this.limit = value;
+      this.abortOnFail = m.group(6) != null;
+    }
+
+    boolean passes(double value) {
+      switch (op) {
+        case "<":
+          return value < limit;
+        case "<=":
+          return value <= limit;
+        case ">":
+          return value > limit;
+        default:
+          return value >= limit;
+      }
+    }
+  }
+
+  // Semicolon separated list, blanks ignored
+  public void add(String exprs) {
+    if (exprs == null) {
+      return;
+    }
+    for (String expr : exprs.split(";")) {
+      if (!expr.isBlank()) {
+        list.add(new Threshold(expr));
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return list.isEmpty();
+  }
+
+  // Selected calls merged into one histogram plus their error count
+  private static class Sample {
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    long errors;
+  }
+
+  private static Sample select(String selector, MetricsRegistry metrics, LoadStats load) {
+    Sample sample = new Sample();
+    if ("iteration".equals(selector)) {
+      if (load != null) {
+        sample.latency.add(load.getLatency());
+        sample.errors = load.getErrors();
+      }
+    } else if (selector.startsWith("script:")) {
+      String name = selector.substring("script:".length());
+      for (MetricsRegistry.ScriptRuns r : metrics.scripts()) {
+        if (r.name.equals(name)) {
+          sample.latency.add(r.getDuration());
+          sample.errors += r.getFailures();
+        }
+      }
+    } else {
+      String op = selector.startsWith("soap:") ? selector.substring("soap:".length()) : null;
+      for (MetricsRegistry.Endpoint e : metrics.endpoints()) {
+        String key = e.method + " " + e.template;
+        if ("http".equals(selector) || op != null && isOperation(e.template, op)
+            || op == null && key.contains(selector)) {
+          sample.latency.add(e.getLatency());
+          sample.errors += e.getErrors();
+        }
+      }
+    }
+    return sample;
+  }
+
+  // "#Add" and "#ns:Add" both match operation Add
+  private static boolean isOperation(String template, String op) {
+    int hash = template.lastIndexOf('#');
+    if (hash < 0) {
+      return false;
+    }
+    String name = template.substring(hash + 1);
+    return name.equals(op) || name.endsWith(":" + op);
+  }
+
+  // Milliseconds for latencies, a ratio for errors; NaN without samples
+  private static double value(Threshold t, Sample sample) {
+    LatencyHistogram h = sample.latency;
+    long count = h.getCount();
+    if ("count".equals(t.aggregate)) {
+      return count;
+    }
+    if (count == 0) {
+      return Double.NaN;
+    }
+    switch (t.aggregate) {
+      case "errors":
+        return (double) sample.errors / count;
+      case "avg":
+        return h.getMean() / 1000;
+      case "max":
+        return h.getMax() / 1000.0;
+      default:
+        return h.getPercentile(Double.parseDouble(t.aggregate.substring(1))) / 1000.0;
+    }
+  }
+
+  // Logs every result, returns false when any threshold is breached
+  public boolean check(MetricsRegistry metrics, LoadStats load) {
+    boolean passed = true;
+    for (Threshold t : list) {
+      if (load == null && "iteration".equals(t.selector)) {
+        log.info("Threshold {}: skipped, load mode only", t.expr);
+        continue;
+      }
+      double v = value(t, select(t.selector, metrics, load));
+      if (Double.isNaN(v)) {
+        log.error("Threshold {}: FAILED (no data)", t.expr);
+        passed = false;
+      } else if (t.passes(v)) {
+        log.info("Threshold {}: passed ({})", t.expr, format(t, v));
+      } else {
+        log.error("Threshold {}: FAILED ({})", t.expr, format(t, v));
+        passed = false;
+      }
+    }
+    return passed;
+  }
+
+  // True once an abortOnFail threshold is lost: max and count only grow, so an upper bound
+  // on them is lost at once (a lower bound can still be met); percentiles and error rates
+  // after ABORT_MIN_SAMPLES samples
+  public boolean shouldAbort(MetricsRegistry metrics, LoadStats load) {
+    for (Threshold t : list) {
+      if (!t.abortOnFail) {
+        continue;
+      }
+      Sample sample = select(t.selector, metrics, load);
+      boolean growing = "max".equals(t.aggregate) || "count".equals(t.aggregate);
+      boolean settled = growing ? "<".equals(t.op) || "<=".equals(t.op)
+          : sample.latency.getCount() >= ABORT_MIN_SAMPLES;
+      double v = value(t, sample);
+      if (settled && !Double.isNaN(v) && !t.passes(v)) {
+        log.error("Threshold {} lost ({}), aborting", t.expr, format(t, v));
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String format(Threshold t, double v) {
+    if ("errors".equals(t.aggregate)) {
+      return String.format("%.2f%%", v * 100);
+    }
+    return "count".equals(t.aggregate) ? String.valueOf((long) v) : String.format("%.1fms", v);
+  }
+}
@@ -0,0 +1,79 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Thread factories for VUs and blocking calls: virtual threads when the runtime has them
+// (JDK 21+, looked up by reflection as the build targets 11), daemon platform threads
+// otherwise. Blocking inside synchronized pins a virtual thread to its carrier, hot paths
+// use ReentrantLock; -Djdk.tracePinnedThreads=short reports the remaining cases
+public final class VirtualThreads {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+  // Thread.ofVirtual(), null when unsupported
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method FACTORY;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    try {
+      Class<?> type = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      // Preview builds of JDK 19/20 throw here unless --enable-preview is set
+      ofVirtual.invoke(null);
+      name = type.getMethod("name", String.class, long.class);
+      factory = type.getMethod("factory");
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+  }
+
+  private VirtualThreads() {
+  }
+
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  // Threads named prefix1, prefix2...; virtual only when asked for and supported
+  public static ThreadFactory factory(String prefix, boolean virtual) {
+    if (virtual && OF_VIRTUAL != null) {
+      try {
+        // Builders are mutable, each factory gets its own
+        Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+        return (ThreadFactory) FACTORY.invoke(builder);
+      } catch (ReflectiveOperationException e) {
+        log.warn("Virtual threads unavailable: {}", e.getMessage());
+      }
+    }
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, prefix + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  // Logs the mode once per component, with the reason for a fallback
+  public static boolean resolve(boolean requested, String component) {
+    if (!requested) {
+      return false;
+    }
+    if (!isSupported()) {
+      log.warn("{}: virtual threads need JDK 21+ (running {}), using platform threads",
+          component, Runtime.version().feature());
+      return false;
+    }
+    log.info("{}: virtual threads", component);
+    return true;
+  }
+}
@@ -121,10 +121,29 @@ public class XmlUtils {
   }
 
   public static Document parseXml(String xmlStr) throws Exception {
-    DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
-    f.setNamespaceAware(true);
-    InputSource is = new InputSource(new StringReader(xmlStr));
-    return f.newDocumentBuilder().parse(is);
+    JfrEvents.XmlConversion event = begin();
+    try {
+      DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+      f.setNamespaceAware(true);
+      InputSource is = new InputSource(new StringReader(xmlStr));
+      return f.newDocumentBuilder().parse(is);
+    } finally {
+      commit(event, "parse");
+    }
+  }
+
+  private static JfrEvents.XmlConversion begin() {
+    JfrEvents.XmlConversion event = new JfrEvents.XmlConversion();
+    event.begin();
+    return event;
+  }
+
+  private static void commit(JfrEvents.XmlConversion event, String conversion) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.conversion = conversion;
+      event.commit();
+    }
   }
 
   public static String xmlToString(Object obj) {
@@ -136,6 +155,7 @@ public class XmlUtils {
   }
 
   public static String xmlToString(Object obj, Boolean omit, Boolean pretty, Integer indent) {
+    JfrEvents.XmlConversion event = begin();
     try {
       Node node = null;
       try {
@@ -150,6 +170,8 @@ public class XmlUtils {
     } catch (Exception e) {
       log.error("Error converting Object to string: {}", e.getMessage());
       throw new RuntimeException("Error: " + e.getMessage(), e);
+    } finally {
+      commit(event, "toString");
     }
   }
 
@@ -194,6 +216,7 @@ public class XmlUtils {
   }
 
   public static Map<String, Object> xmlToMap(Object obj) {
+    JfrEvents.XmlConversion event = begin();
     try {
       Node node = resolveXmlSource(obj);
       Object value = nodeContentToObject(node);
@@ -201,6 +224,8 @@ public class XmlUtils {
     } catch (Exception e) {
       log.error("Error converting XML to Map: {}", e.getMessage());
       throw new RuntimeException("Error: " + e.getMessage(), e);
+    } finally {
+      commit(event, "toMap");
     }
   }
 
@@ -267,6 +292,7 @@ public class XmlUtils {
 
   @SuppressWarnings("unchecked")
   public static String mapToXml(Map<String, Object> map, Map<String, String> namespaces) {
+    JfrEvents.XmlConversion event = begin();
     try {
       if (map.size() != 1) {
         throw new IllegalArgumentException("Map must have exactly one root key.");
@@ -311,6 +337,8 @@ public class XmlUtils {
     } catch (Exception e) {
       log.error("Error converting Map to XML: {}", e.getMessage());
       throw new RuntimeException("Error converting Map to XML", e);
+    } finally {
+      commit(event, "fromMap");
     }
   }
 
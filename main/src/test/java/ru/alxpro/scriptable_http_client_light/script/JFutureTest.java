@@ -0,0 +1,47 @@
+package ru.alxpro.scriptable_http_client_light.script;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class JFutureTest {
+
+  @Test
+  void callbackRunsOnAwaitingThread() throws Exception {
+    JFuture<Integer> source = new JFuture<>();
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+    JFuture<Integer> plusOne = source.then(v -> {
+      ranOn.set(Thread.currentThread());
+      return v + 1;
+    });
+    Thread completer = new Thread(() -> source.complete(41));
+    completer.start();
+    completer.join();
+    assertNull(ranOn.get());
+    assertEquals(42, plusOne.await());
+    assertSame(Thread.currentThread(), ranOn.get());
+  }
+
+  @Test
+  void pendingCallbackRunsAtScriptEnd() throws Exception {
+    JFuture<String> source = new JFuture<>();
+    AtomicReference<String> seen = new AtomicReference<>();
+    source.thenDo(seen::set);
+    Thread completer = new Thread(() -> source.complete("done"));
+    completer.start();
+    completer.join();
+    JFuture.runPending();
+    assertEquals("done", seen.get());
+  }
+
+  @Test
+  void onErrorRecoversOnAwaitingThread() {
+    JFuture<String> source = new JFuture<>();
+    JFuture<String> recovered = source.onError(e -> e.getMessage());
+    new Thread(() -> source.completeExceptionally(new IllegalStateException("boom"))).start();
+    assertEquals("boom", recovered.await());
+  }
+}
@@ -0,0 +1,34 @@
+package ru.alxpro.scriptable_http_client_light.script.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+  private static final long INTERVAL = 100_000_000L;
+
+  @Test
+  void freshBucketAllowsBurst() {
+    RateLimiter limiter = new RateLimiter(10, 3);
+    long now = System.nanoTime();
+    assertArrayEquals(new long[]{0, 0, 0, INTERVAL, 2 * INTERVAL}, reserve(limiter, now, 5));
+  }
+
+  @Test
+  void idleBucketAllowsSameBurst() {
+    RateLimiter limiter = new RateLimiter(10, 3);
+    long now = System.nanoTime();
+    reserve(limiter, now, 5);
+    long later = now + 10_000_000_000L;
+    assertArrayEquals(new long[]{0, 0, 0, INTERVAL, 2 * INTERVAL}, reserve(limiter, later, 5));
+  }
+
+  private static long[] reserve(RateLimiter limiter, long now, int count) {
+    long[] waits = new long[count];
+    for (int i = 0; i < count; i++) {
+      waits[i] = limiter.reserve(now);
+    }
+    return waits;
+  }
+}
@@ -0,0 +1,91 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketBoundaries() {
+    assertEquals(63, LatencyHistogram.indexOf(63));
+    assertEquals(63, LatencyHistogram.valueOf(63));
+    // First split range: buckets two values wide
+    assertEquals(64, LatencyHistogram.indexOf(64));
+    assertEquals(64, LatencyHistogram.indexOf(65));
+    assertEquals(65, LatencyHistogram.indexOf(66));
+    assertEquals(65, LatencyHistogram.valueOf(64));
+    assertEquals(0, LatencyHistogram.indexOf(-5));
+  }
+
+  @Test
+  void largeValuesLandInLastBucket() {
+    int last = LatencyHistogram.indexOf((1L << 36) - 1);
+    assertEquals((1L << 36) - 1, LatencyHistogram.valueOf(last));
+    assertEquals(last, LatencyHistogram.indexOf(1L << 36));
+    assertEquals(last, LatencyHistogram.indexOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  void everyValueFallsWithinItsBucket() {
+    for (long v = 0; v < (1L << 36); v = v < 4096 ? v + 1 : v * 3 / 2 + 7) {
+      int index = LatencyHistogram.indexOf(v);
+      assertTrue(LatencyHistogram.valueOf(index) >= v, "upper bound of " + v);
+      if (index > 0) {
+        assertTrue(LatencyHistogram.valueOf(index - 1) < v, "previous bucket of " + v);
+      }
+    }
+  }
+
+  @Test
+  void percentileRank() {
+    LatencyHistogram h = new LatencyHistogram();
+    for (int v = 1; v <= 100; v++) {
+      h.record(v);
+    }
+    assertEquals(1, h.getPercentile(0));
+    assertEquals(50, h.getPercentile(50));
+    assertEquals(99, h.getPercentile(99));
+    // Bucket upper bound 101 is capped by the max
+    assertEquals(100, h.getPercentile(100));
+    assertEquals(0, new LatencyHistogram().getPercentile(99));
+  }
+
+  @Test
+  void countsAtOrBelowBounds() {
+    LatencyHistogram h = new LatencyHistogram();
+    h.record(10);
+    h.record(64);
+    h.record(65);
+    h.record(1000);
+    assertArrayEquals(new long[]{1, 1, 3, 3, 4},
+        h.countsAtOrBelow(new long[]{10, 63, 65, 999}));
+  }
+
+  @Test
+  void arrayRoundTrip() {
+    LatencyHistogram h = new LatencyHistogram();
+    long[] values = {0, 7, 63, 64, 65, 1000, 123_456, 1L << 36};
+    for (long v : values) {
+      h.record(v);
+    }
+    LatencyHistogram copy = LatencyHistogram.fromArray(h.toArray());
+    assertEquals(h.getCount(), copy.getCount());
+    assertEquals(h.getSum(), copy.getSum());
+    assertEquals(h.getMax(), copy.getMax());
+    for (double p : new double[]{0, 25, 50, 90, 99, 100}) {
+      assertEquals(h.getPercentile(p), copy.getPercentile(p));
+    }
+    long[] bounds = {10, 100, 10_000, 1_000_000};
+    assertArrayEquals(h.countsAtOrBelow(bounds), copy.countsAtOrBelow(bounds));
+  }
+
+  @Test
+  void fromArraySkipsInvalidBuckets() {
+    LatencyHistogram h = LatencyHistogram.fromArray(new long[]{30, 20, 10, 2, -1, 5, 99_999, 5});
+    assertEquals(2, h.getCount());
+    assertEquals(0, LatencyHistogram.fromArray(null).getCount());
+  }
+}
@@ -0,0 +1,41 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsRegistryTest {
+
+  @Test
+  void templatesIdSegments() {
+    assertEquals("http://host:8080/users/{id}/orders",
+        MetricsRegistry.templateOf("http://host:8080/users/42/orders?page=2"));
+    assertEquals("http://host", MetricsRegistry.templateOf("http://host?q=1"));
+  }
+
+  @Test
+  void repeatedUrlsShareTheirEndpoint() {
+    MetricsRegistry metrics = new MetricsRegistry(10);
+    MetricsRegistry.Endpoint get = metrics.endpoint("GET", "http://host/users/1", null);
+    assertSame(get, metrics.endpoint("GET", "http://host/users/1", null));
+    assertSame(get, metrics.endpoint("GET", "http://host/users/2", null));
+    assertNotSame(get, metrics.endpoint("POST", "http://host/users/1", null));
+    MetricsRegistry.Endpoint add = metrics.endpoint("POST", "http://host/calc", "Add");
+    assertEquals("http://host/calc#Add", add.template);
+    assertNotSame(add, metrics.endpoint("POST", "http://host/calc", "Sub"));
+    assertSame(add, metrics.endpoint("POST", "http://host/calc", "Add"));
+    assertEquals(4, metrics.getEndpoints().size());
+  }
+
+  @Test
+  void resetDropsResolvedEndpoints() {
+    MetricsRegistry metrics = new MetricsRegistry(10);
+    MetricsRegistry.Endpoint before = metrics.endpoint("GET", "http://host/a", null);
+    metrics.reset();
+    MetricsRegistry.Endpoint after = metrics.endpoint("GET", "http://host/a", null);
+    assertNotSame(before, after);
+    assertSame(after, metrics.getEndpoints().get("GET http://host/a"));
+  }
+}
@@ -0,0 +1,113 @@
+package ru.alxpro.scriptable_http_client_light.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ThresholdsTest {
+
+  @Test
+  void parsesSelectorsAndUnits() {
+    Thresholds.Threshold soap = new Thresholds.Threshold("p99(soap:Add) < 50ms");
+    assertEquals("p99", soap.aggregate);
+    assertEquals("soap:Add", soap.selector);
+    assertEquals("<", soap.op);
+    assertEquals(50, soap.limit);
+    assertFalse(soap.abortOnFail);
+
+    Thresholds.Threshold max = new Thresholds.Threshold(" max(iteration) <= 2.5s abortOnFail ");
+    assertEquals("iteration", max.selector);
+    assertEquals("<=", max.op);
+    assertEquals(2500, max.limit);
+    assertTrue(max.abortOnFail);
+
+    Thresholds.Threshold errors = new Thresholds.Threshold("errors < 1%");
+    assertEquals("http", errors.selector);
+    assertEquals(0.01, errors.limit, 1e-9);
+
+    Thresholds.Threshold ratio = new Thresholds.Threshold("errors <= 0.05");
+    assertEquals(0.05, ratio.limit, 1e-9);
+
+    Thresholds.Threshold count = new Thresholds.Threshold("count(GET http://host/users) >= 10");
+    assertEquals("GET http://host/users", count.selector);
+    assertTrue(count.passes(10));
+    assertFalse(count.passes(9));
+  }
+
+  @Test
+  void rejectsInvalidExpressions() {
+    assertThrows(IllegalArgumentException.class, () -> new Thresholds.Threshold("p99 < fast"));
+    assertThrows(IllegalArgumentException.class, () -> new Thresholds.Threshold("min < 5ms"));
+    assertThrows(IllegalArgumentException.class, () -> new Thresholds.Threshold("p95 = 5ms"));
+  }
+
+  @Test
+  void thresholdWithoutDataFails() {
+    Thresholds thresholds = new Thresholds();
+    thresholds.add("p99(soap:Addd) < 50ms");
+    assertFalse(thresholds.check(new MetricsRegistry(10), null));
+  }
+
+  @Test
+  void iterationThresholdSkippedOutsideLoadMode() {
+    Thresholds thresholds = new Thresholds();
+    thresholds.add("max(iteration) < 1s");
+    assertTrue(thresholds.check(new MetricsRegistry(10), null));
+  }
+
+  @Test
+  void upperBoundOnMaxAbortsAtOnce() {
+    Stats load = new Stats();
+    load.latency.record(20_000);
+    assertTrue(abort("max(iteration) < 10ms abortOnFail", load));
+    assertFalse(abort("max(iteration) < 10ms", load));
+  }
+
+  @Test
+  void lowerBoundOnMaxDoesNotAbort() {
+    Stats load = new Stats();
+    load.latency.record(5_000);
+    assertFalse(abort("max(iteration) > 10ms abortOnFail", load));
+    assertFalse(abort("count(iteration) >= 100 abortOnFail", load));
+  }
+
+  @Test
+  void percentileAbortsOnlyAfterEnoughSamples() {
+    Stats load = new Stats();
+    for (int i = 0; i < 99; i++) {
+      load.latency.record(20_000);
+    }
+    assertFalse(abort("p95(iteration) < 10ms abortOnFail", load));
+    load.latency.record(20_000);
+    assertTrue(abort("p95(iteration) < 10ms abortOnFail", load));
+  }
+
+  private static boolean abort(String expr, LoadStats load) {
+    Thresholds thresholds = new Thresholds();
+    thresholds.add(expr);
+    return thresholds.shouldAbort(new MetricsRegistry(10), load);
+  }
+
+  private static class Stats implements LoadStats {
+
+    final LatencyHistogram latency = new LatencyHistogram();
+
+    @Override
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public long getErrors() {
+      return 0;
+    }
+
+    @Override
+    public long getDropped() {
+      return 0;
+    }
+  }
+}